@@ -14,6 +14,8 @@ public class BenchRunner {
         // perft to warmup the JIT
         Perft.perft(board, 6);
 
+        // time to reach the bench depth on every position, to compare thread counts
+        long start = System.nanoTime();
         for(String fen : BenchPositions.POSITIONS) {
             board.loadFromFen(fen);
             engine.getSearchAlgorithm().search(board, 100000, 1000, 100, 100, 67_0000, 12, 0L);
@@ -23,6 +25,7 @@ public class BenchRunner {
             engine.getSearchAlgorithm().flushHashTable();
         }
 
+        System.out.println("bench time " + (System.nanoTime() - start) / 1_000_000 + " ms");
         System.out.println(nodeCount + " nodes " + nps/BenchPositions.POSITIONS.length + " nps");
     }
     
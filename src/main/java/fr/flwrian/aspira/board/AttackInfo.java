@@ -0,0 +1,58 @@
+package fr.flwrian.aspira.board;
+
+import fr.flwrian.aspira.move.MoveGenerator;
+
+/**
+ * Attack data of one position, seen from the side to move.
+ * Board computes it on first use (Board.getAttackInfo). makeMove keeps it in the undo record and undoMove
+ * restores it, so the check test, the legal generators (captures then quiets), the legality checks of the
+ * hash move and killers, givesCheck and SEE share one computation per node, across the searches of its children.
+ */
+public final class AttackInfo {
+
+    // === Our king ===
+    public long checkers;   // enemy pieces giving check
+    public long pinned;     // our pieces pinned against our king
+    public long threats;    // squares attacked by the enemy, sliders seeing through our king
+
+    // === Enemy king ===
+    // only needed by givesCheck, computed on its first call in the position
+    public final long[] checkSquares = new long[6];   // squares from which each piece type attacks the enemy king
+    public long discoveredCheckBlockers;              // our pieces that give a discovered check when they leave their line
+
+    boolean valid;
+    boolean checkInfoValid;
+
+    void invalidate() {
+        valid = false;
+        checkInfoValid = false;
+    }
+
+    void compute(Board board) {
+        final boolean white = board.whiteTurn;
+        final long king = board.kings & (white ? board.whitePieces : board.blackPieces);
+        final int kingSquare = Long.numberOfTrailingZeros(king);
+
+        checkers = MoveGenerator.getAttackers(board, kingSquare, !white);
+        pinned = MoveGenerator.getPinnedPieces(board);
+        // the king must not step back along the ray of a slider checking it
+        threats = MoveGenerator.attackedSquares(board, !white, board.getBoard() ^ king);
+        valid = true;
+    }
+
+    void computeCheckInfo(Board board) {
+        final long occupancy = board.getBoard();
+        final int kingSquare = Long.numberOfTrailingZeros(board.kings & (board.whiteTurn ? board.blackPieces : board.whitePieces));
+
+        // a pawn of ours attacks the king from where an enemy pawn on the king square would attack
+        checkSquares[Board.PAWN] = board.whiteTurn ? MoveGenerator.BLACK_PAWN_ATTACKS[kingSquare] : MoveGenerator.WHITE_PAWN_ATTACKS[kingSquare];
+        checkSquares[Board.KNIGHT] = Board.KNIGHT_ATTACKS[kingSquare];
+        checkSquares[Board.BISHOP] = MoveGenerator.getBishopAttacks(kingSquare, occupancy);
+        checkSquares[Board.ROOK] = MoveGenerator.getRookAttacks(kingSquare, occupancy);
+        checkSquares[Board.QUEEN] = checkSquares[Board.BISHOP] | checkSquares[Board.ROOK];
+        checkSquares[Board.KING] = 0L;
+
+        discoveredCheckBlockers = MoveGenerator.getDiscoveredCheckBlockers(board);
+        checkInfoValid = true;
+    }
+}
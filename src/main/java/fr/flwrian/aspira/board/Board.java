@@ -1,7 +1,11 @@
 package fr.flwrian.aspira.board;
 
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+import fr.flwrian.aspira.hash.Cuckoo;
 import fr.flwrian.aspira.hash.Zobrist;
 import fr.flwrian.aspira.move.Move;
 import fr.flwrian.aspira.move.MoveGenerator;
@@ -12,29 +16,20 @@ public class Board {
 
     public boolean whiteTurn;
 
-    public long whitePawns;
-    public long whiteKnights;
-    public long whiteBishops;
-    public long whiteRooks;
-    public long whiteQueens;
-    public long whiteKing;
-
-    public long blackPawns;
-    public long blackKnights;
-    public long blackBishops;
-    public long blackRooks;
-    public long blackQueens;
-    public long blackKing;
+    // piece type bitboards, both colors together
+    public long pawns;
+    public long knights;
+    public long bishops;
+    public long rooks;
+    public long queens;
+    public long kings;
 
+    // color bitboards
     public long whitePieces;
     public long blackPieces;
 
-    public long bitboard;
-
-    public long whiteCastleQueenSide;
-    public long whiteCastleKingSide;
-    public long blackCastleQueenSide;
-    public long blackCastleKingSide;
+    // WHITE_KING_SIDE_CASTLING | WHITE_QUEEN_SIDE_CASTLING | BLACK_KING_SIDE_CASTLING | BLACK_QUEEN_SIDE_CASTLING
+    public int castlingRights;
 
     public long enPassantSquare;
 
@@ -45,9 +40,27 @@ public class Board {
 
     // === ZobristKey ===
     public long zobristKey;
+    public long pawnKey;        // pawns of both colors only, for pawn structure caches
+    public long materialKey;    // piece counts only: the i-th piece of a kind adds PIECE_KEYS[color][type][i]
 
     public short plyCount;
 
+    // plies since the last capture or pawn move (fifty-move rule); a null move resets it too,
+    // so the repetition scan never looks past an irreversible move or a null move
+    public int halfmoveClock;
+
+    // === Mailbox ===
+    // piece type on every square (PAWN..KING, EMPTY), kept in sync with the bitboards
+    private byte[] mailbox = new byte[64];
+
+    // === Attack info ===
+    // checkers, pins, threats and check squares of the position, computed on first use;
+    // make parks it in the undo record and unmake brings it back
+    private AttackInfo attackInfo = new AttackInfo();
+
+    // view handed to the FEN parser by loadFromFen(byte[], ...)
+    private AsciiChars fenBytes = new AsciiChars();
+
     // valid
     public static final long RANK_1 = 0x00000000000000FFL;
     public static final long RANK_2 = 0x000000000000FF00L;
@@ -478,6 +491,15 @@ public class Board {
     public static final long BLACK_KING_SIDE_CASTLE_NEED_TO_NOT_BE_ATTACKED_MASK = G8 | F8 | E8;
     public static final long BLACK_QUEEN_SIDE_CASTLE_NEED_TO_NOT_BE_ATTACKED_MASK = D8 | C8 | E8;
 
+    // castling rights bits, same layout as the Zobrist castling index
+    public static final int WHITE_KING_SIDE_CASTLING = 1;
+    public static final int WHITE_QUEEN_SIDE_CASTLING = 2;
+    public static final int BLACK_KING_SIDE_CASTLING = 4;
+    public static final int BLACK_QUEEN_SIDE_CASTLING = 8;
+    public static final int WHITE_CASTLING = WHITE_KING_SIDE_CASTLING | WHITE_QUEEN_SIDE_CASTLING;
+    public static final int BLACK_CASTLING = BLACK_KING_SIDE_CASTLING | BLACK_QUEEN_SIDE_CASTLING;
+    public static final int ALL_CASTLING = WHITE_CASTLING | BLACK_CASTLING;
+
     public static final int PAWN = 0;
     public static final int KNIGHT = 1;
     public static final int BISHOP = 2;
@@ -506,6 +528,57 @@ public class Board {
     public static final int QUEEN_SCORE = 900;
     public static final int KING_SCORE = 20000;
 
+    // longest FEN writeFen can produce: full board, every field at its widest, a 10-digit halfmove clock
+    public static final int MAX_FEN_LENGTH = 96;
+
+    // bytes written by encode: occupancy, 32 piece nibbles, then the side to move, castling, en passant and clocks
+    public static final int ENCODED_SIZE = 32;
+
+    private static final long NIBBLE_LOW_BITS = 0x1111111111111111L;
+    private static final long COLOR_NIBBLE_BITS = 0x8888888888888888L;
+
+    // evaluation of one piece on one square, material included, signed for white, for the position setup
+    // (initFromBitboards): index (color * 6 + type) * 64 + square
+    private static final int[] SETUP_MG = new int[12 * 64];
+    private static final int[] SETUP_EG = new int[12 * 64];
+    private static final int[] PHASE_WEIGHTS = { 0, 1, 1, 2, 4, 0 };
+
+    // the same per encoded nibble (color << 3 | type), for decode: index nibble << 6 | square.
+    // DECODE_EVAL packs the middlegame score in the high half and the endgame score in the low half
+    private static final long[] DECODE_EVAL = new long[16 * 64];
+    private static final long[] DECODE_KEYS = new long[16 * 64];
+    private static final long[] DECODE_PAWN_KEYS = new long[16 * 64];
+
+    static {
+        final int[][] tablesMG = { PAWN_TABLE_MG, KNIGHT_TABLE_MG, BISHOP_TABLE_MG, ROOK_TABLE_MG, QUEEN_TABLE_MG, KING_MIDDLE_GAME_TABLE_MG };
+        final int[][] tablesEG = { PAWN_TABLE_EG, KNIGHT_TABLE_EG, BISHOP_TABLE_EG, ROOK_TABLE_EG, QUEEN_TABLE_EG, KING_END_GAME_TABLE_EG };
+        final int[] valuesMG = { 100, 320, 330, 500, 900, 0 };
+        final int[] valuesEG = { 100, 310, 320, 510, 950, 0 };
+        for (int type = PAWN; type <= KING; type++) {
+            for (int square = 0; square < 64; square++) {
+                SETUP_MG[type * 64 + square] = valuesMG[type] + tablesMG[type][square ^ 56];
+                SETUP_EG[type * 64 + square] = valuesEG[type] + tablesEG[type][square ^ 56];
+                SETUP_MG[(6 + type) * 64 + square] = -valuesMG[type] - tablesMG[type][square];
+                SETUP_EG[(6 + type) * 64 + square] = -valuesEG[type] - tablesEG[type][square];
+            }
+        }
+
+        for (int color = 0; color < 2; color++) {
+            for (int type = PAWN; type <= KING; type++) {
+                for (int square = 0; square < 64; square++) {
+                    final int index = (color << 3 | type) << 6 | square;
+                    final int row = (color * 6 + type) * 64;
+                    DECODE_EVAL[index] = ((long) SETUP_MG[row + square] << 32) + SETUP_EG[row + square];
+                    DECODE_KEYS[index] = Zobrist.PIECE_KEYS[color][type][square];
+                    DECODE_PAWN_KEYS[index] = type == PAWN ? DECODE_KEYS[index] : 0L;
+                }
+            }
+        }
+    }
+
+    private static final byte[] WHITE_FEN_PIECES = { 'P', 'N', 'B', 'R', 'Q', 'K' };
+    private static final byte[] BLACK_FEN_PIECES = { 'p', 'n', 'b', 'r', 'q', 'k' };
+
     public static final int[] PIECE_SCORES = {
             PAWN_SCORE,
             KNIGHT_SCORE,
@@ -524,19 +597,15 @@ public class Board {
         whiteTurn = true;
 
         // Initialisation des pièces à leurs positions de départ
-        whitePawns = A2 | B2 | C2 | D2 | E2 | F2 | G2 | H2;
-        whiteKnights = B1 | G1;
-        whiteBishops = C1 | F1;
-        whiteRooks = A1 | H1;
-        whiteQueens = D1;
-        whiteKing = E1;
-
-        blackPawns = A7 | B7 | C7 | D7 | E7 | F7 | G7 | H7;
-        blackKnights = B8 | G8;
-        blackBishops = C8 | F8;
-        blackRooks = A8 | H8;
-        blackQueens = D8;
-        blackKing = E8;
+        pawns = RANK_2 | RANK_7;
+        knights = B1 | G1 | B8 | G8;
+        bishops = C1 | F1 | C8 | F8;
+        rooks = A1 | H1 | A8 | H8;
+        queens = D1 | D8;
+        kings = E1 | E8;
+
+        whitePieces = RANK_1 | RANK_2;
+        blackPieces = RANK_7 | RANK_8;
 
         // printBitBoard(whitePawns);
         // printBitBoard(whiteKnights);
@@ -545,15 +614,9 @@ public class Board {
         // printBitBoard(whiteQueens);
         // printBitBoard(whiteKing);
 
-        whitePieces = whitePawns | whiteKnights | whiteBishops | whiteRooks | whiteQueens | whiteKing;
-        blackPieces = blackPawns | blackKnights | blackBishops | blackRooks | blackQueens | blackKing;
-
-        bitboard = whitePieces | blackPieces;
+        updateMailbox();
 
-        whiteCastleQueenSide = 1L;
-        whiteCastleKingSide = 1L;
-        blackCastleQueenSide = 1L;
-        blackCastleKingSide = 1L;
+        castlingRights = ALL_CASTLING;
 
         enPassantSquare = 0L;
 
@@ -561,8 +624,17 @@ public class Board {
 
     }
 
-    private void saveBoardHistory(int move) {
-        history.push(this, move);
+    private BoardHistory saveBoardHistory(int move) {
+        return history.push(this, move);
+    }
+
+    // Keeps the attack info of the position in the undo record for undoMove, and starts the child
+    // position with the record's spare one
+    private void saveAttackInfo(BoardHistory undo) {
+        AttackInfo parent = attackInfo;
+        attackInfo = undo.attackInfo;
+        undo.attackInfo = parent;
+        attackInfo.invalidate();
     }
 
 
@@ -570,7 +642,9 @@ public class Board {
         int count = 0;
 
         // on saute de 2 en 2 (même side to move)
-        for (int i = history.size() - 2; i >= 0; i -= 2) {
+        // positions before the last irreversible move cannot come back, and one 2 plies ago cannot be the same
+        int end = Math.max(history.size() - halfmoveClock, 0);
+        for (int i = history.size() - 4; i >= end; i -= 2) {
 
             if (history.stack[i].zobristKey == this.zobristKey) {
                 count++;
@@ -581,301 +655,228 @@ public class Board {
         }
         return false;
     }
+
+    /**
+     * True if one reversible move separates this position from a position of the search path (ply plies
+     * from the root): the side to move can go back to it, or the opponent could have come here straight from it,
+     * so the line is at least a draw. Found without generating moves: the key difference with a position
+     * an odd number of plies back is looked up in the Cuckoo tables, then the squares between must be empty.
+     * Positions before the root are left to isThreefoldRepetition.
+     */
+    public boolean hasUpcomingRepetition(int ply) {
+        final int end = Math.min(Math.min(halfmoveClock, history.size()), ply - 1);
+        if (end < 3) {
+            return false;
+        }
+
+        final long occupancy = getBoard();
+        for (int i = 3; i <= end; i += 2) {
+            int move = Cuckoo.find(zobristKey ^ history.stack[history.size() - i].zobristKey);
+            if (move != 0 && (MoveGenerator.BETWEEN[move >>> 6][move & 63] & occupancy) == 0L) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Fifty-move rule: 100 plies without a capture or a pawn move. The caller still has to rule out a mate. */
+    public boolean isFiftyMoveRule() {
+        return halfmoveClock >= 100;
+    }
+
     public void loadFromFen(String fen) {
-        String[] fenParts = fen.split(" ");
-        String[] rows = fenParts[0].split("/");
-        int row = 0;
-        int col = 0;
-
-        whitePawns = 0;
-        whiteKnights = 0;
-        whiteBishops = 0;
-        whiteRooks = 0;
-        whiteQueens = 0;
-        whiteKing = 0;
-
-        blackPawns = 0;
-        blackKnights = 0;
-        blackBishops = 0;
-        blackRooks = 0;
-        blackQueens = 0;
-        blackKing = 0;
+        loadFromFen(fen, 0, fen.length());
+    }
+
+    /** Same as loadFromFen(CharSequence, int, int) on ASCII bytes, e.g. a line of an EPD file read into a buffer. */
+    public void loadFromFen(byte[] fen, int start, int end) {
+        fenBytes.bytes = fen;
+        loadFromFen(fenBytes, start, end);
+        fenBytes.bytes = null;
+    }
+
+    /**
+     * Loads the FEN found between start and end (exclusive) without allocating.
+     * The halfmove clock is optional, anything after it (fullmove number, EPD operations) is ignored.
+     */
+    public void loadFromFen(CharSequence fen, int start, int end) {
+        attackInfo.invalidate();
+
+        pawns = 0;
+        knights = 0;
+        bishops = 0;
+        rooks = 0;
+        queens = 0;
+        kings = 0;
 
         whitePieces = 0;
         blackPieces = 0;
 
-        whiteCastleQueenSide = 1L;
-        whiteCastleKingSide = 1L;
-        blackCastleQueenSide = 1L;
-        blackCastleKingSide = 1L;
+        castlingRights = 0;
 
         enPassantSquare = 0L;
 
         plyCount = 0;
 
-        for (String r : rows) {
-            for (int i = 0; i < r.length(); i++) {
-                char c = r.charAt(i);
-                if (Character.isDigit(c)) {
-                    col += Character.getNumericValue(c);
-                } else {
-                    long bitboard = 1L << 63 - (row * 8 + (7 - col));
-                    switch (c) {
-                        case 'P':
-                            whitePawns |= bitboard;
-                            break;
-                        case 'N':
-                            whiteKnights |= bitboard;
-                            break;
-                        case 'B':
-                            whiteBishops |= bitboard;
-                            break;
-                        case 'R':
-                            whiteRooks |= bitboard;
-                            break;
-                        case 'Q':
-                            whiteQueens |= bitboard;
-                            break;
-                        case 'K':
-                            whiteKing |= bitboard;
-                            break;
-                        case 'p':
-                            blackPawns |= bitboard;
-                            break;
-                        case 'n':
-                            blackKnights |= bitboard;
-                            break;
-                        case 'b':
-                            blackBishops |= bitboard;
-                            break;
-                        case 'r':
-                            blackRooks |= bitboard;
-                            break;
-                        case 'q':
-                            blackQueens |= bitboard;
-                            break;
-                        case 'k':
-                            blackKing |= bitboard;
-                            break;
-                    }
-                    col++;
-                }
+        // piece placement, from a8 to h1
+        int i = start;
+        int placed = 56;
+        for (; i < end; i++) {
+            char c = fen.charAt(i);
+            if (c == ' ') {
+                break;
             }
-            row++;
-            col = 0;
-        }
-
-        // turn
-        whiteTurn = fenParts[1].equals("w");
-
-        // castling rights
-        if (fenParts[2].contains("K")) {
-            // verify that the king has not moved and the rook is on H1
-            if ((whiteKing & E1) != 0 && (whiteRooks & H1) != 0) {
-                whiteCastleKingSide = 1L;
-            } else {
-                whiteCastleKingSide = 0L;
+            if (c == '/') {
+                placed -= 16;
+                continue;
             }
-        } else {
-            whiteCastleKingSide = 0L;
-        }
-
-        if (fenParts[2].contains("Q")) {
-            // verify that the king has not moved and the rook is on A1
-            if ((whiteKing & E1) != 0 && (whiteRooks & A1) != 0) {
-                whiteCastleQueenSide = 1L;
-            } else {
-                whiteCastleQueenSide = 0L;
+            if (c >= '1' && c <= '8') {
+                placed += c - '0';
+                continue;
             }
-        } else {
-            whiteCastleQueenSide = 0L;
-        }
 
-        if (fenParts[2].contains("k")) {
-            // verify that the king has not moved and the rook is on H8
-            if ((blackKing & E8) != 0 && (blackRooks & H8) != 0) {
-                blackCastleKingSide = 1L;
+            long bitboard = 1L << placed++;
+            switch (c) {
+                case 'P':
+                case 'p':
+                    pawns |= bitboard;
+                    break;
+                case 'N':
+                case 'n':
+                    knights |= bitboard;
+                    break;
+                case 'B':
+                case 'b':
+                    bishops |= bitboard;
+                    break;
+                case 'R':
+                case 'r':
+                    rooks |= bitboard;
+                    break;
+                case 'Q':
+                case 'q':
+                    queens |= bitboard;
+                    break;
+                case 'K':
+                case 'k':
+                    kings |= bitboard;
+                    break;
+            }
+            if (c < 'a') {
+                whitePieces |= bitboard;
             } else {
-                blackCastleKingSide = 0L;
+                blackPieces |= bitboard;
             }
-        } else {
-            blackCastleKingSide = 0L;
         }
 
-        if (fenParts[2].contains("q")) {
-            // verify that the king has not moved and the rook is on A8
-            if ((blackKing & E8) != 0 && (blackRooks & A8) != 0) {
-                blackCastleQueenSide = 1L;
-            } else {
-                blackCastleQueenSide = 0L;
+        // turn
+        i = nextFenField(fen, i, end);
+        whiteTurn = i < end && fen.charAt(i) == 'w';
+
+        // castling rights, kept only if the king and the rook are still on their squares
+        i = nextFenField(fen, i, end);
+        for (; i < end && fen.charAt(i) != ' '; i++) {
+            switch (fen.charAt(i)) {
+                case 'K':
+                    if ((kings & E1 & whitePieces) != 0 && (rooks & H1 & whitePieces) != 0) {
+                        castlingRights |= WHITE_KING_SIDE_CASTLING;
+                    }
+                    break;
+                case 'Q':
+                    if ((kings & E1 & whitePieces) != 0 && (rooks & A1 & whitePieces) != 0) {
+                        castlingRights |= WHITE_QUEEN_SIDE_CASTLING;
+                    }
+                    break;
+                case 'k':
+                    if ((kings & E8 & blackPieces) != 0 && (rooks & H8 & blackPieces) != 0) {
+                        castlingRights |= BLACK_KING_SIDE_CASTLING;
+                    }
+                    break;
+                case 'q':
+                    if ((kings & E8 & blackPieces) != 0 && (rooks & A8 & blackPieces) != 0) {
+                        castlingRights |= BLACK_QUEEN_SIDE_CASTLING;
+                    }
+                    break;
             }
-        } else {
-            blackCastleQueenSide = 0L;
         }
 
         // en passant square
-        if (!fenParts[3].equals("-")) {
-            int file = fenParts[3].charAt(0) - 'a';
-            int rank = fenParts[3].charAt(1) - '1';
+        i = nextFenField(fen, i, end);
+        if (i + 1 < end && fen.charAt(i) != '-') {
+            int file = fen.charAt(i) - 'a';
+            int rank = fen.charAt(i + 1) - '1';
             enPassantSquare = 1L << (rank * 8 + file);
-        } else {
-            enPassantSquare = 0L;
         }
 
-        updateBitBoard();
-
-        // === EVAL ===
-
-        // Reset
-        currentEvalMG = 0;
-        currentEvalEG = 0;
-        phase = 0;
-
-        // Blancs
-        currentEvalMG += Long.bitCount(whitePawns) * 100;
-        currentEvalEG += Long.bitCount(whitePawns) * 100;
-
-        currentEvalMG += Long.bitCount(whiteKnights) * 320;
-        currentEvalEG += Long.bitCount(whiteKnights) * 310;
-        phase += Long.bitCount(whiteKnights) * 1;
-
-        currentEvalMG += Long.bitCount(whiteBishops) * 330;
-        currentEvalEG += Long.bitCount(whiteBishops) * 320;
-        phase += Long.bitCount(whiteBishops) * 1;
-
-        currentEvalMG += Long.bitCount(whiteRooks) * 500;
-        currentEvalEG += Long.bitCount(whiteRooks) * 510;
-        phase += Long.bitCount(whiteRooks) * 2;
-
-        currentEvalMG += Long.bitCount(whiteQueens) * 900;
-        currentEvalEG += Long.bitCount(whiteQueens) * 950;
-        phase += Long.bitCount(whiteQueens) * 4;
-
-        // Noirs
-        currentEvalMG -= Long.bitCount(blackPawns) * 100;
-        currentEvalEG -= Long.bitCount(blackPawns) * 100;
+        // halfmove clock, optional in EPD lines
+        i = nextFenField(fen, i, end);
+        halfmoveClock = 0;
+        for (; i < end && fen.charAt(i) >= '0' && fen.charAt(i) <= '9'; i++) {
+            halfmoveClock = halfmoveClock * 10 + (fen.charAt(i) - '0');
+        }
+
+        initFromBitboards();
+    }
+
+    // Mailbox, evaluation and keys of a position just set up on the bitboards (loadFromFen),
+    // one loop per kind of piece with its table rows at hand
+    private void initFromBitboards() {
+        Arrays.fill(mailbox, (byte) EMPTY);
+
+        int evalMG = 0;
+        int evalEG = 0;
+        int totalPhase = 0;
+        long key = 0L;
+        long pawnKey = 0L;
+        for (int type = PAWN; type <= KING; type++) {
+            final long typeBB = type == PAWN ? pawns : type == KNIGHT ? knights : type == BISHOP ? bishops : type == ROOK ? rooks : type == QUEEN ? queens : kings;
+            for (int color = WHITE; color <= BLACK; color++) {
+                final long[] keys = Zobrist.PIECE_KEYS[color][type];
+                final int row = (color * 6 + type) * 64;
+                for (long bb = typeBB & (color == WHITE ? whitePieces : blackPieces); bb != 0L; bb &= bb - 1) {
+                    final int square = Long.numberOfTrailingZeros(bb);
+                    mailbox[square] = (byte) type;
+                    evalMG += SETUP_MG[row + square];
+                    evalEG += SETUP_EG[row + square];
+                    key ^= keys[square];
+                }
+            }
+            totalPhase += PHASE_WEIGHTS[type] * Long.bitCount(typeBB);
 
-        currentEvalMG -= Long.bitCount(blackKnights) * 320;
-        currentEvalEG -= Long.bitCount(blackKnights) * 310;
-        phase += Long.bitCount(blackKnights) * 1;
+            // pawns come first: the key so far is the pawn key
+            if (type == PAWN) {
+                pawnKey = key;
+            }
+        }
 
-        currentEvalMG -= Long.bitCount(blackBishops) * 330;
-        currentEvalEG -= Long.bitCount(blackBishops) * 320;
-        phase += Long.bitCount(blackBishops) * 1;
+        currentEvalMG = evalMG;
+        currentEvalEG = evalEG;
+        phase = Math.min(totalPhase, 24);
 
-        currentEvalMG -= Long.bitCount(blackRooks) * 500;
-        currentEvalEG -= Long.bitCount(blackRooks) * 510;
-        phase += Long.bitCount(blackRooks) * 2;
+        setKeys(key, pawnKey);
+    }
 
-        currentEvalMG -= Long.bitCount(blackQueens) * 900;
-        currentEvalEG -= Long.bitCount(blackQueens) * 950;
-        phase += Long.bitCount(blackQueens) * 4;
+    // Keys from the pieces' part of the Zobrist key and the pawn key: adds the side to move, castling
+    // and en passant, counts the material. Same keys as generateZobristKey, generatePawnKey and generateMaterialKey
+    private void setKeys(long key, long pawnKey) {
+        if (whiteTurn) {
+            key ^= Zobrist.SIDE_TO_MOVE_KEY;
+        }
+        key ^= Zobrist.CASTLING_KEYS[castlingRights];
+        if (enPassantSquare != 0L) {
+            key ^= Zobrist.EN_PASSANT_KEYS[Long.numberOfTrailingZeros(enPassantSquare)];
+        }
 
-        // Clamp phase
-        phase = Math.min(phase, 24);
+        long materialKey = 0L;
+        for (int type = PAWN; type < KING; type++) {
+            final long typeBB = type == PAWN ? pawns : type == KNIGHT ? knights : type == BISHOP ? bishops : type == ROOK ? rooks : queens;
+            materialKey ^= Zobrist.MATERIAL_KEYS[WHITE][type][Long.bitCount(typeBB & whitePieces)]
+                    ^ Zobrist.MATERIAL_KEYS[BLACK][type][Long.bitCount(typeBB & blackPieces)];
+        }
 
-        // PSQT
-        long wPawns = whitePawns;
-        long wKnights = whiteKnights;
-        long wBishops = whiteBishops;
-        long wRooks = whiteRooks;
-        long wQueens = whiteQueens;
-        long wKing = whiteKing;
-        long bPawns = blackPawns;
-        long bKnights = blackKnights;
-        long bBishops = blackBishops;
-        long bRooks = blackRooks;
-        long bQueens = blackQueens;
-        long bKing = blackKing;
-
-        // white pawns
-        while (wPawns != 0) {
-            int square = Long.numberOfTrailingZeros(wPawns);
-            currentEvalMG += PAWN_TABLE_MG[square ^ 56];
-            currentEvalEG += PAWN_TABLE_EG[square ^ 56];
-            wPawns &= wPawns - 1;
-        }
-        // black pawns
-        while (bPawns != 0) {
-            int square = Long.numberOfTrailingZeros(bPawns);
-            currentEvalMG -= PAWN_TABLE_MG[square];
-            currentEvalEG -= PAWN_TABLE_EG[square];
-            bPawns &= bPawns - 1;
-        }
-        // white knights
-        while (wKnights != 0) {
-            int square = Long.numberOfTrailingZeros(wKnights);
-            currentEvalMG += KNIGHT_TABLE_MG[square ^ 56];
-            currentEvalEG += KNIGHT_TABLE_EG[square ^ 56];
-            wKnights &= wKnights - 1;
-        }
-        // black knights
-
-        while (bKnights != 0) {
-            int square = Long.numberOfTrailingZeros(bKnights);
-            currentEvalMG -= KNIGHT_TABLE_MG[square];
-            currentEvalEG -= KNIGHT_TABLE_EG[square];
-            bKnights &= bKnights - 1;
-        }
-        // white bishops
-        while (wBishops != 0) {
-            int square = Long.numberOfTrailingZeros(wBishops);
-            currentEvalMG += BISHOP_TABLE_MG[square ^ 56];
-            currentEvalEG += BISHOP_TABLE_EG[square ^ 56];
-            wBishops &= wBishops - 1;
-        }
-        // black bishops
-        while (bBishops != 0) {
-            int square = Long.numberOfTrailingZeros(bBishops);
-            currentEvalMG -= BISHOP_TABLE_MG[square];
-            currentEvalEG -= BISHOP_TABLE_EG[square];
-            bBishops &= bBishops - 1;
-        }
-        // white rooks
-        while (wRooks != 0) {
-            int square = Long.numberOfTrailingZeros(wRooks);
-            currentEvalMG += ROOK_TABLE_MG[square ^ 56];
-            currentEvalEG += ROOK_TABLE_EG[square ^ 56];
-            wRooks &= wRooks - 1;
-        }
-        // black rooks
-        while (bRooks != 0) {
-            int square = Long.numberOfTrailingZeros(bRooks);
-            currentEvalMG -= ROOK_TABLE_MG[square];
-            currentEvalEG -= ROOK_TABLE_EG[square];
-            bRooks &= bRooks - 1;
-        }
-        // white queens
-        while (wQueens != 0) {
-            int square = Long.numberOfTrailingZeros(wQueens);
-            currentEvalMG += QUEEN_TABLE_MG[square ^ 56];
-            currentEvalEG += QUEEN_TABLE_EG[square ^ 56];
-            wQueens &= wQueens - 1;
-        }
-        // black queens
-        while (bQueens != 0) {
-            int square = Long.numberOfTrailingZeros(bQueens);
-            currentEvalMG -= QUEEN_TABLE_MG[square];
-            currentEvalEG -= QUEEN_TABLE_EG[square];
-            bQueens &= bQueens - 1;
-        }
-        // white king
-        while (wKing != 0) {
-            int square = Long.numberOfTrailingZeros(wKing);
-            currentEvalMG += KING_MIDDLE_GAME_TABLE_MG[square ^ 56];
-            currentEvalEG += KING_END_GAME_TABLE_EG[square ^ 56];
-            wKing &= wKing - 1;
-        }
-        // black king
-        while (bKing != 0) {
-            int square = Long.numberOfTrailingZeros(bKing);
-            currentEvalMG -= KING_MIDDLE_GAME_TABLE_MG[square];
-            currentEvalEG -= KING_END_GAME_TABLE_EG[square];
-            bKing &= bKing - 1;
-        }
-
-        // === Zobrist ===
-        this.zobristKey = generateZobristKey();
+        this.zobristKey = key;
+        this.pawnKey = pawnKey;
+        this.materialKey = materialKey;
     }
 
     final int WHITE = 0;
@@ -888,7 +889,7 @@ public class Board {
         // WHITE PIECES
         // =========================
 
-        long bb = whitePawns;
+        long bb = getWhitePawns();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -896,7 +897,7 @@ public class Board {
             zobristKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][sq];
         }
 
-        bb = whiteKnights;
+        bb = getWhiteKnights();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -904,7 +905,7 @@ public class Board {
             zobristKey ^= Zobrist.PIECE_KEYS[WHITE][KNIGHT][sq];
         }
 
-        bb = whiteBishops;
+        bb = getWhiteBishops();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -912,7 +913,7 @@ public class Board {
             zobristKey ^= Zobrist.PIECE_KEYS[WHITE][BISHOP][sq];
         }
 
-        bb = whiteRooks;
+        bb = getWhiteRooks();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -920,7 +921,7 @@ public class Board {
             zobristKey ^= Zobrist.PIECE_KEYS[WHITE][ROOK][sq];
         }
 
-        bb = whiteQueens;
+        bb = getWhiteQueens();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -928,7 +929,7 @@ public class Board {
             zobristKey ^= Zobrist.PIECE_KEYS[WHITE][QUEEN][sq];
         }
 
-        bb = whiteKing;
+        bb = getWhiteKing();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -940,7 +941,7 @@ public class Board {
         // BLACK PIECES
         // =========================
 
-        bb = blackPawns;
+        bb = getBlackPawns();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -948,7 +949,7 @@ public class Board {
             zobristKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][sq];
         }
 
-        bb = blackKnights;
+        bb = getBlackKnights();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -956,7 +957,7 @@ public class Board {
             zobristKey ^= Zobrist.PIECE_KEYS[BLACK][KNIGHT][sq];
         }
 
-        bb = blackBishops;
+        bb = getBlackBishops();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -964,7 +965,7 @@ public class Board {
             zobristKey ^= Zobrist.PIECE_KEYS[BLACK][BISHOP][sq];
         }
 
-        bb = blackRooks;
+        bb = getBlackRooks();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -972,7 +973,7 @@ public class Board {
             zobristKey ^= Zobrist.PIECE_KEYS[BLACK][ROOK][sq];
         }
 
-        bb = blackQueens;
+        bb = getBlackQueens();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -980,7 +981,7 @@ public class Board {
             zobristKey ^= Zobrist.PIECE_KEYS[BLACK][QUEEN][sq];
         }
 
-        bb = blackKing;
+        bb = getBlackKing();
         while (bb != 0L) {
             long p = bb & -bb;
             bb &= bb - 1;
@@ -1010,20 +1011,48 @@ public class Board {
         return zobristKey;
     }
 
+    public final long generatePawnKey() {
+        long key = 0L;
+        for (long bb = pawns & whitePieces; bb != 0L; bb &= bb - 1) {
+            key ^= Zobrist.PIECE_KEYS[WHITE][PAWN][Long.numberOfTrailingZeros(bb)];
+        }
+        for (long bb = pawns & blackPieces; bb != 0L; bb &= bb - 1) {
+            key ^= Zobrist.PIECE_KEYS[BLACK][PAWN][Long.numberOfTrailingZeros(bb)];
+        }
+        return key;
+    }
+
+    // kings are left out, there is always one of each
+    public final long generateMaterialKey() {
+        long key = 0L;
+        for (int type = PAWN; type < KING; type++) {
+            long typeBB = type == PAWN ? pawns : type == KNIGHT ? knights : type == BISHOP ? bishops : type == ROOK ? rooks : queens;
+            int whiteCount = Long.bitCount(typeBB & whitePieces);
+            int blackCount = Long.bitCount(typeBB & blackPieces);
+            for (int i = 0; i < whiteCount; i++) {
+                key ^= Zobrist.PIECE_KEYS[WHITE][type][i];
+            }
+            for (int i = 0; i < blackCount; i++) {
+                key ^= Zobrist.PIECE_KEYS[BLACK][type][i];
+            }
+        }
+        return key;
+    }
+
     public final int calculatePhase() {
         int phase = 0;
 
         // Blancs
-        phase += Long.bitCount(whiteKnights) * 1;
-        phase += Long.bitCount(whiteBishops) * 1;
-        phase += Long.bitCount(whiteRooks) * 2;
-        phase += Long.bitCount(whiteQueens) * 4;
+        phase += Long.bitCount(getWhiteKnights()) * 1;
+        phase += Long.bitCount(getWhiteBishops()) * 1;
+        phase += Long.bitCount(getWhiteRooks()) * 2;
+        phase += Long.bitCount(getWhiteQueens()) * 4;
 
         // Noirs
-        phase += Long.bitCount(blackKnights) * 1;
-        phase += Long.bitCount(blackBishops) * 1;
-        phase += Long.bitCount(blackRooks) * 2;
-        phase += Long.bitCount(blackQueens) * 4;
+        phase += Long.bitCount(getBlackKnights()) * 1;
+        phase += Long.bitCount(getBlackBishops()) * 1;
+        phase += Long.bitCount(getBlackRooks()) * 2;
+        phase += Long.bitCount(getBlackQueens()) * 4;
 
         // Clamp entre 0 et 24
         return Math.min(phase, 24);
@@ -1034,131 +1063,216 @@ public class Board {
     }
 
     public String getFen() {
-        StringBuilder fen = new StringBuilder();
-        for (int i = 0; i < 64; i += 8) {
+        byte[] buffer = new byte[MAX_FEN_LENGTH];
+        return new String(buffer, 0, writeFen(buffer, 0), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes the FEN of the position into buffer from offset, without allocating, and returns the offset
+     * after its last character. The buffer needs MAX_FEN_LENGTH bytes of room.
+     */
+    public int writeFen(byte[] buffer, int offset) {
+        int p = offset;
+        for (int rank = 7; rank >= 0; rank--) {
             int empty = 0;
-            for (int j = 0; j < 8; j++) {
-                long bitboard = 1L << 63 - (i + (7 - j));
-                if ((whitePawns & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("P");
-                } else if ((whiteKnights & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("N");
-                } else if ((whiteBishops & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("B");
-                } else if ((whiteRooks & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("R");
-                } else if ((whiteQueens & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("Q");
-                } else if ((whiteKing & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("K");
-                } else if ((blackPawns & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("p");
-                } else if ((blackKnights & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("n");
-                } else if ((blackBishops & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("b");
-                } else if ((blackRooks & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("r");
-                } else if ((blackQueens & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("q");
-                } else if ((blackKing & bitboard) != 0) {
-                    if (empty > 0) {
-                        fen.append(empty);
-                        empty = 0;
-                    }
-                    fen.append("k");
-                } else {
+            for (int square = rank * 8; square < rank * 8 + 8; square++) {
+                int piece = mailbox[square];
+                if (piece == EMPTY) {
                     empty++;
+                    continue;
                 }
+                if (empty > 0) {
+                    buffer[p++] = (byte) ('0' + empty);
+                    empty = 0;
+                }
+                buffer[p++] = (whitePieces & (1L << square)) != 0 ? WHITE_FEN_PIECES[piece] : BLACK_FEN_PIECES[piece];
             }
             if (empty > 0) {
-                fen.append(empty);
+                buffer[p++] = (byte) ('0' + empty);
             }
-            if (i < 56) {
-                fen.append("/");
+            if (rank > 0) {
+                buffer[p++] = '/';
             }
         }
 
-        fen.append(" ");
-        fen.append(whiteTurn ? "w" : "b");
-        fen.append(" ");
-        if (whiteCastleKingSide == 1L) {
-            fen.append("K");
+        buffer[p++] = ' ';
+        buffer[p++] = (byte) (whiteTurn ? 'w' : 'b');
+        buffer[p++] = ' ';
+        if ((castlingRights & WHITE_KING_SIDE_CASTLING) != 0) {
+            buffer[p++] = 'K';
         }
-        if (whiteCastleQueenSide == 1L) {
-            fen.append("Q");
+        if ((castlingRights & WHITE_QUEEN_SIDE_CASTLING) != 0) {
+            buffer[p++] = 'Q';
         }
-        if (blackCastleKingSide == 1L) {
-            fen.append("k");
+        if ((castlingRights & BLACK_KING_SIDE_CASTLING) != 0) {
+            buffer[p++] = 'k';
         }
-        if (blackCastleQueenSide == 1L) {
-            fen.append("q");
+        if ((castlingRights & BLACK_QUEEN_SIDE_CASTLING) != 0) {
+            buffer[p++] = 'q';
         }
-        if (whiteCastleKingSide == 0L && whiteCastleQueenSide == 0L && blackCastleKingSide == 0L
-                && blackCastleQueenSide == 0L) {
-            fen.append("-");
+        if (castlingRights == 0) {
+            buffer[p++] = '-';
         }
-        fen.append(" ");
+        buffer[p++] = ' ';
         if (enPassantSquare != 0L) {
-            for (int i = 0; i < 64; i++) {
-                if ((enPassantSquare == SQUARES_MAP[i])) {
-                    fen.append((char) ('a' + (i % 8)));
-                    fen.append((char) ('1' + (i / 8)));
-                }
-            }
+            int square = Long.numberOfTrailingZeros(enPassantSquare);
+            buffer[p++] = (byte) ('a' + (square % 8));
+            buffer[p++] = (byte) ('1' + (square / 8));
         } else {
-            fen.append("-");
+            buffer[p++] = '-';
+        }
+        buffer[p++] = ' ';
+
+        // halfmove clock, digits written backwards then reversed
+        int first = p;
+        int clock = halfmoveClock;
+        do {
+            buffer[p++] = (byte) ('0' + clock % 10);
+            clock /= 10;
+        } while (clock > 0);
+        for (int lo = first, hi = p - 1; lo < hi; lo++, hi--) {
+            byte digit = buffer[lo];
+            buffer[lo] = buffer[hi];
+            buffer[hi] = digit;
+        }
+
+        buffer[p++] = ' ';
+        buffer[p++] = '1';
+        return p;
+    }
+
+    /**
+     * Writes the position in ENCODED_SIZE bytes at the buffer position: the occupancy, a nibble per piece
+     * (color << 3 | type) from a1 to h8 over two longs, then side to move, castling rights, en passant
+     * square, halfmove clock and ply count in a last long. Positions with more than 32 pieces do not fit.
+     */
+    public void encode(ByteBuffer buffer) {
+        final long occupancy = whitePieces | blackPieces;
+        if (Long.bitCount(occupancy) > 32) {
+            throw new IllegalArgumentException("Cannot encode more than 32 pieces");
+        }
+
+        // bit i of each mask: the i-th piece from a1 is of that kind (pext), then one nibble per piece (pdep)
+        final long knightPieces = Long.compress(knights, occupancy);
+        final long bishopPieces = Long.compress(bishops, occupancy);
+        final long rookPieces = Long.compress(rooks, occupancy);
+        final long queenPieces = Long.compress(queens, occupancy);
+        final long kingPieces = Long.compress(kings, occupancy);
+        final long blackPieceMask = Long.compress(blackPieces, occupancy);
+
+        final long low = toNibbles(knightPieces, KNIGHT) | toNibbles(bishopPieces, BISHOP) | toNibbles(rookPieces, ROOK)
+                | toNibbles(queenPieces, QUEEN) | toNibbles(kingPieces, KING) | toNibbles(blackPieceMask, 8);
+        final long high = toNibbles(knightPieces >>> 16, KNIGHT) | toNibbles(bishopPieces >>> 16, BISHOP) | toNibbles(rookPieces >>> 16, ROOK)
+                | toNibbles(queenPieces >>> 16, QUEEN) | toNibbles(kingPieces >>> 16, KING) | toNibbles(blackPieceMask >>> 16, 8);
+
+        final long state = (whiteTurn ? 0L : 1L)
+                | (long) castlingRights << 1
+                | (enPassantSquare != 0L ? 0x40L | Long.numberOfTrailingZeros(enPassantSquare) : 0L) << 5
+                | (long) (halfmoveClock & 0xFFFF) << 16
+                | (long) (plyCount & 0xFFFF) << 32;
+
+        buffer.putLong(occupancy);
+        buffer.putLong(low);
+        buffer.putLong(high);
+        buffer.putLong(state);
+    }
+
+    /** Loads a position written by encode, reading ENCODED_SIZE bytes from the buffer position. */
+    public void decode(ByteBuffer buffer) {
+        final long occupancy = buffer.getLong();
+        final long low = buffer.getLong();
+        final long high = buffer.getLong();
+        final long state = buffer.getLong();
+
+        attackInfo.invalidate();
+
+        // the reverse of encode: each bit of the nibbles gathered over the pieces (pext), put back on the
+        // occupied squares (pdep). Unused nibbles read as white pawns past the last piece, pdep drops them
+        final long typeBit0 = Long.expand(Long.compress(low, NIBBLE_LOW_BITS) | Long.compress(high, NIBBLE_LOW_BITS) << 16, occupancy);
+        final long typeBit1 = Long.expand(Long.compress(low, NIBBLE_LOW_BITS << 1) | Long.compress(high, NIBBLE_LOW_BITS << 1) << 16, occupancy);
+        final long typeBit2 = Long.expand(Long.compress(low, NIBBLE_LOW_BITS << 2) | Long.compress(high, NIBBLE_LOW_BITS << 2) << 16, occupancy);
+        blackPieces = Long.expand(Long.compress(low, COLOR_NIBBLE_BITS) | Long.compress(high, COLOR_NIBBLE_BITS) << 16, occupancy);
+        whitePieces = occupancy & ~blackPieces;
+
+        pawns = occupancy & ~(typeBit0 | typeBit1 | typeBit2);  // 000
+        knights = typeBit0 & ~typeBit1 & ~typeBit2;               // 001
+        bishops = typeBit1 & ~typeBit0 & ~typeBit2;               // 010
+        rooks = typeBit0 & typeBit1;                              // 011
+        queens = typeBit2 & ~typeBit0;                            // 100
+        kings = typeBit2 & typeBit0;                              // 101
+
+        whiteTurn = (state & 1L) == 0L;
+        castlingRights = (int) (state >>> 1) & 0xF;
+        final int enPassant = (int) (state >>> 5) & 0x7F;
+        enPassantSquare = (enPassant & 0x40) != 0 ? 1L << (enPassant & 63) : 0L;
+        halfmoveClock = (int) (state >>> 16) & 0xFFFF;
+        plyCount = (short) (state >>> 32);
+
+        // mailbox, evaluation, piece and pawn keys in one pass over the pieces, nibbles in hand:
+        // the first 16 pieces from low, the others from high
+        Arrays.fill(mailbox, (byte) EMPTY);
+        final long firstSquares = Long.expand(0xFFFFL, occupancy);
+        long eval = 0L;
+        long key = 0L;
+        long pawnKey = 0L;
+        for (int half = 0; half < 2; half++) {
+            long nibbles = half == 0 ? low : high;
+            for (long bb = half == 0 ? firstSquares : occupancy & ~firstSquares; bb != 0L; bb &= bb - 1, nibbles >>>= 4) {
+                final int square = Long.numberOfTrailingZeros(bb);
+                final int index = ((int) nibbles & 0xF) << 6 | square;
+                mailbox[square] = (byte) (index >>> 6 & 7);
+                eval += DECODE_EVAL[index];
+                key ^= DECODE_KEYS[index];
+                pawnKey ^= DECODE_PAWN_KEYS[index];
+            }
+        }
+
+        currentEvalEG = (int) eval;
+        currentEvalMG = (int) ((eval - currentEvalEG) >> 32);
+        phase = Math.min(Long.bitCount(knights) + Long.bitCount(bishops) + 2 * Long.bitCount(rooks) + 4 * Long.bitCount(queens), 24);
+
+        setKeys(key, pawnKey);
+    }
+
+    // one nibble holding value for each set bit of the 16 low bits of pieces
+    private static long toNibbles(long pieces, int value) {
+        return Long.expand(pieces, NIBBLE_LOW_BITS) * value;
+    }
+
+    // index of the next field of a FEN: past the end of the current one and the spaces after it
+    private static int nextFenField(CharSequence fen, int i, int end) {
+        while (i < end && fen.charAt(i) != ' ') {
+            i++;
+        }
+        while (i < end && fen.charAt(i) == ' ') {
+            i++;
         }
-        fen.append(" ");
-        fen.append("0");
-        fen.append(" ");
-        fen.append("1");
+        return i;
+    }
+
+    // Read-only CharSequence over ASCII bytes, so loadFromFen(byte[], ...) shares the CharSequence parser
+    private static final class AsciiChars implements CharSequence {
+        byte[] bytes;
 
-        return fen.toString();
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
     }
 
     public void printBitBoard(long bitBoard) {
@@ -1214,29 +1328,29 @@ public class Board {
         // Remplir le tableau board avec les pièces ou des points pour les cases vides
         for (int i = 0; i < 64; i++) {
             long bitboard = 1L << i;
-            if ((whitePawns & bitboard) != 0) {
+            if ((getWhitePawns() & bitboard) != 0) {
                 board[i] = pieces[0];
-            } else if ((whiteKnights & bitboard) != 0) {
+            } else if ((getWhiteKnights() & bitboard) != 0) {
                 board[i] = pieces[1];
-            } else if ((whiteBishops & bitboard) != 0) {
+            } else if ((getWhiteBishops() & bitboard) != 0) {
                 board[i] = pieces[2];
-            } else if ((whiteRooks & bitboard) != 0) {
+            } else if ((getWhiteRooks() & bitboard) != 0) {
                 board[i] = pieces[3];
-            } else if ((whiteQueens & bitboard) != 0) {
+            } else if ((getWhiteQueens() & bitboard) != 0) {
                 board[i] = pieces[4];
-            } else if ((whiteKing & bitboard) != 0) {
+            } else if ((getWhiteKing() & bitboard) != 0) {
                 board[i] = pieces[5];
-            } else if ((blackPawns & bitboard) != 0) {
+            } else if ((getBlackPawns() & bitboard) != 0) {
                 board[i] = pieces[6];
-            } else if ((blackKnights & bitboard) != 0) {
+            } else if ((getBlackKnights() & bitboard) != 0) {
                 board[i] = pieces[7];
-            } else if ((blackBishops & bitboard) != 0) {
+            } else if ((getBlackBishops() & bitboard) != 0) {
                 board[i] = pieces[8];
-            } else if ((blackRooks & bitboard) != 0) {
+            } else if ((getBlackRooks() & bitboard) != 0) {
                 board[i] = pieces[9];
-            } else if ((blackQueens & bitboard) != 0) {
+            } else if ((getBlackQueens() & bitboard) != 0) {
                 board[i] = pieces[10];
-            } else if ((blackKing & bitboard) != 0) {
+            } else if ((getBlackKing() & bitboard) != 0) {
                 board[i] = pieces[11];
             } else {
                 board[i] = " ";
@@ -1283,6 +1397,8 @@ public class Board {
         System.out.println("    Key: " + Long.toHexString(this.zobristKey));
         System.out.println("    Key generated: " + Long.toHexString(generateZobristKey()));
         System.out.println(this.zobristKey == generateZobristKey() ? "    Zobrist Key OK" : "    Zobrist Key MISMATCH");
+        System.out.println(this.pawnKey == generatePawnKey() ? "    Pawn Key OK" : "    Pawn Key MISMATCH");
+        System.out.println(this.materialKey == generateMaterialKey() ? "    Material Key OK" : "    Material Key MISMATCH");
         System.out.println("     Eval: " + evaluate());
     }
 
@@ -1294,7 +1410,7 @@ public class Board {
 
     // Get the bitboard
     public long getBoard() {
-        return bitboard;
+        return whitePieces | blackPieces;
     }
 
     // Get the white pieces bitboard
@@ -1309,66 +1425,67 @@ public class Board {
 
     // Get the white pawns bitboard
     public long getWhitePawns() {
-        return whitePawns;
+        return pawns & whitePieces;
     }
 
     // Get the white knights bitboard
     public long getWhiteKnights() {
-        return whiteKnights;
+        return knights & whitePieces;
     }
 
     // Get the white bishops bitboard
     public long getWhiteBishops() {
-        return whiteBishops;
+        return bishops & whitePieces;
     }
 
     // Get the white rooks bitboard
     public long getWhiteRooks() {
-        return whiteRooks;
+        return rooks & whitePieces;
     }
 
     // Get the white queens bitboard
     public long getWhiteQueens() {
-        return whiteQueens;
+        return queens & whitePieces;
     }
 
     // Get the white king bitboard
     public long getWhiteKing() {
-        return whiteKing;
+        return kings & whitePieces;
     }
 
     // Get the black pawns bitboard
     public long getBlackPawns() {
-        return blackPawns;
+        return pawns & blackPieces;
     }
 
     // Get the black knights bitboard
     public long getBlackKnights() {
-        return blackKnights;
+        return knights & blackPieces;
     }
 
     // Get the black bishops bitboard
     public long getBlackBishops() {
-        return blackBishops;
+        return bishops & blackPieces;
     }
 
     // Get the black rooks bitboard
     public long getBlackRooks() {
-        return blackRooks;
+        return rooks & blackPieces;
     }
 
     // Get the black queens bitboard
     public long getBlackQueens() {
-        return blackQueens;
+        return queens & blackPieces;
     }
 
     // Get the black king bitboard
     public long getBlackKing() {
-        return blackKing;
+        return kings & blackPieces;
     }
 
     public void makeNullMove() {
-        saveBoardHistory(0);
+        saveAttackInfo(saveBoardHistory(0));
+        halfmoveClock = 0;
 
         if (enPassantSquare != 0L) {
             this.zobristKey ^= Zobrist.EN_PASSANT_KEYS[Long.numberOfTrailingZeros(enPassantSquare)];
@@ -1386,7 +1503,8 @@ public class Board {
     }
 
     public final void makeMove(int move) {
-        saveBoardHistory(move);
+        final BoardHistory undo = saveBoardHistory(move);
+        saveAttackInfo(undo);
 
         final int from = PackedMove.getFrom(move);
         final int to = PackedMove.getTo(move);
@@ -1398,10 +1516,29 @@ public class Board {
         final int fromFlipped = from ^ 56;
         final int toFlipped = to ^ 56;
 
+        final int piece = mailbox[from];
+
         if (whiteTurn) {
-            makeMoveWhite(from, to, fromBB, toBB, flags, fromFlipped, toFlipped, move);
+            undo.captured = makeMoveWhite(piece, from, to, fromBB, toBB, flags, fromFlipped, toFlipped, move);
         } else {
-            makeMoveBlack(from, to, fromBB, toBB, flags, move);
+            undo.captured = makeMoveBlack(piece, from, to, fromBB, toBB, flags, move);
+        }
+
+        updateMailbox(piece, from, to, flags, move);
+
+        halfmoveClock = piece == PAWN || undo.captured != EMPTY ? 0 : halfmoveClock + 1;
+
+        // Color bitboards, from the squares that changed (the castling rook is done by processXCastleY)
+        if (whiteTurn) {
+            whitePieces ^= fromBB | toBB;
+            if (undo.captured != EMPTY) {
+                blackPieces &= ~(flags == Move.EN_PASSANT ? toBB >>> 8 : toBB);
+            }
+        } else {
+            blackPieces ^= fromBB | toBB;
+            if (undo.captured != EMPTY) {
+                whitePieces &= ~(flags == Move.EN_PASSANT ? toBB << 8 : toBB);
+            }
         }
 
         // Toggle side to move
@@ -1415,67 +1552,75 @@ public class Board {
         }
 
         plyCount++;
-        updateBitBoard();
         phase = Math.min(phase, 24);
     }
 
-    private void makeMoveWhite(int from, int to, long fromBB, long toBB, int flags, int fromFlipped, int toFlipped,
-            int move) {
+    // returns the captured piece type (EMPTY if none) for the undo record
+    private int makeMoveWhite(int piece, int from, int to, long fromBB, long toBB, int flags, int fromFlipped,
+            int toFlipped, int move) {
+        int captured = EMPTY;
+
         // Handle captures first (branch prediction optimization)
         if ((blackPieces & toBB) != 0) {
-            handleCaptureWhite(toBB);
+            captured = handleCaptureWhite(toBB);
         }
 
-        // Determine piece type using bitwise operations for speed
-        long piece = fromBB;
-
-        if ((whitePawns & piece) != 0) {
+        // The mailbox gives the moving piece type directly
+        if (piece == PAWN) {
+            if (flags == Move.EN_PASSANT) {
+                captured = PAWN;
+            }
             handleWhitePawnMove(from, to, fromBB, toBB, flags, fromFlipped, toFlipped, move);
-        } else if ((whiteKnights & piece) != 0) {
+        } else if (piece == KNIGHT) {
             movePieceSimple(from, to, fromBB, toBB, fromFlipped, toFlipped,
                     KNIGHT_TABLE_MG, KNIGHT_TABLE_EG, WHITE, KNIGHT);
-            whiteKnights = (whiteKnights & ~fromBB) | toBB;
-        } else if ((whiteBishops & piece) != 0) {
+            knights = (knights & ~fromBB) | toBB;
+        } else if (piece == BISHOP) {
             movePieceSimple(from, to, fromBB, toBB, fromFlipped, toFlipped,
                     BISHOP_TABLE_MG, BISHOP_TABLE_EG, WHITE, BISHOP);
-            whiteBishops = (whiteBishops & ~fromBB) | toBB;
-        } else if ((whiteRooks & piece) != 0) {
+            bishops = (bishops & ~fromBB) | toBB;
+        } else if (piece == ROOK) {
             handleWhiteRookMove(from, to, fromBB, toBB, fromFlipped, toFlipped);
-        } else if ((whiteQueens & piece) != 0) {
+        } else if (piece == QUEEN) {
             movePieceSimple(from, to, fromBB, toBB, fromFlipped, toFlipped,
                     QUEEN_TABLE_MG, QUEEN_TABLE_EG, WHITE, QUEEN);
-            whiteQueens = (whiteQueens & ~fromBB) | toBB;
-        } else if ((whiteKing & piece) != 0) {
+            queens = (queens & ~fromBB) | toBB;
+        } else if (piece == KING) {
             handleWhiteKingMove(from, to, fromBB, toBB, fromFlipped, toFlipped, flags);
         }
+        return captured;
     }
 
-    private void makeMoveBlack(int from, int to, long fromBB, long toBB, int flags, int move) {
+    private int makeMoveBlack(int piece, int from, int to, long fromBB, long toBB, int flags, int move) {
+        int captured = EMPTY;
+
         if ((whitePieces & toBB) != 0) {
-            handleCaptureBlack(toBB);
+            captured = handleCaptureBlack(toBB);
         }
 
-        long piece = fromBB;
-
-        if ((blackPawns & piece) != 0) {
+        if (piece == PAWN) {
+            if (flags == Move.EN_PASSANT) {
+                captured = PAWN;
+            }
             handleBlackPawnMove(from, to, fromBB, toBB, flags, move);
-        } else if ((blackKnights & piece) != 0) {
+        } else if (piece == KNIGHT) {
             movePieceSimple(from, to, fromBB, toBB, from, to,
                     KNIGHT_TABLE_MG, KNIGHT_TABLE_EG, BLACK, KNIGHT);
-            blackKnights = (blackKnights & ~fromBB) | toBB;
-        } else if ((blackBishops & piece) != 0) {
+            knights = (knights & ~fromBB) | toBB;
+        } else if (piece == BISHOP) {
             movePieceSimple(from, to, fromBB, toBB, from, to,
                     BISHOP_TABLE_MG, BISHOP_TABLE_EG, BLACK, BISHOP);
-            blackBishops = (blackBishops & ~fromBB) | toBB;
-        } else if ((blackRooks & piece) != 0) {
+            bishops = (bishops & ~fromBB) | toBB;
+        } else if (piece == ROOK) {
             handleBlackRookMove(from, to, fromBB, toBB);
-        } else if ((blackQueens & piece) != 0) {
+        } else if (piece == QUEEN) {
             movePieceSimple(from, to, fromBB, toBB, from, to,
                     QUEEN_TABLE_MG, QUEEN_TABLE_EG, BLACK, QUEEN);
-            blackQueens = (blackQueens & ~fromBB) | toBB;
-        } else if ((blackKing & piece) != 0) {
+            queens = (queens & ~fromBB) | toBB;
+        } else if (piece == KING) {
             handleBlackKingMove(from, to, fromBB, toBB, flags);
         }
+        return captured;
     }
 
     // Optimized helper for simple piece moves
@@ -1494,34 +1639,39 @@ public class Board {
             int flags, int fromFlipped, int toFlipped, int move) {
         if (flags == Move.EN_PASSANT) {
             long capturedPawn = enPassantSquare >> 8;
-            blackPawns &= ~capturedPawn;
+            pawns &= ~capturedPawn;
             zobristKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][Long.numberOfTrailingZeros(capturedPawn)];
+            pawnKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][Long.numberOfTrailingZeros(capturedPawn)];
+            materialKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][Long.bitCount(pawns & blackPieces)];
 
-            whitePawns = (whitePawns & ~fromBB) | toBB;
+            pawns = (pawns & ~fromBB) | toBB;
             currentEvalMG += PAWN_TABLE_MG[toFlipped] - PAWN_TABLE_MG[fromFlipped];
             currentEvalEG += PAWN_TABLE_EG[toFlipped] - PAWN_TABLE_EG[fromFlipped];
             zobristKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][from] ^
                     Zobrist.PIECE_KEYS[WHITE][PAWN][to];
+            pawnKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][from] ^ Zobrist.PIECE_KEYS[WHITE][PAWN][to];
         } else if (flags == Move.DOUBLE_PAWN_PUSH) {
             if (enPassantSquare != 0) {
                 zobristKey ^= Zobrist.EN_PASSANT_KEYS[Long.numberOfTrailingZeros(enPassantSquare)];
             }
             enPassantSquare = toBB >> 8;
 
-            whitePawns = (whitePawns & ~fromBB) | toBB;
+            pawns = (pawns & ~fromBB) | toBB;
             currentEvalMG += PAWN_TABLE_MG[toFlipped] - PAWN_TABLE_MG[fromFlipped];
             currentEvalEG += PAWN_TABLE_EG[toFlipped] - PAWN_TABLE_EG[fromFlipped];
             zobristKey ^= Zobrist.EN_PASSANT_KEYS[Long.numberOfTrailingZeros(enPassantSquare)] ^
                     Zobrist.PIECE_KEYS[WHITE][PAWN][from] ^
                     Zobrist.PIECE_KEYS[WHITE][PAWN][to];
+            pawnKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][from] ^ Zobrist.PIECE_KEYS[WHITE][PAWN][to];
         } else if (flags == Move.PROMOTION) {
             handleWhitePromotion(from, to, fromBB, toBB, toFlipped, fromFlipped, move);
         } else {
-            whitePawns = (whitePawns & ~fromBB) | toBB;
+            pawns = (pawns & ~fromBB) | toBB;
             currentEvalMG += PAWN_TABLE_MG[toFlipped] - PAWN_TABLE_MG[fromFlipped];
             currentEvalEG += PAWN_TABLE_EG[toFlipped] - PAWN_TABLE_EG[fromFlipped];
             zobristKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][from] ^
                     Zobrist.PIECE_KEYS[WHITE][PAWN][to];
+            pawnKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][from] ^ Zobrist.PIECE_KEYS[WHITE][PAWN][to];
         }
     }
 
@@ -1530,42 +1680,49 @@ public class Board {
         int promoType = PackedMove.getPromotion(move);
 
         // Remove pawn
-        whitePawns &= ~fromBB;
+        pawns &= ~fromBB;
         zobristKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][from];
+        pawnKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][from];
+        materialKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][Long.bitCount(pawns & whitePieces)];
 
         // Common eval update for removing pawn
         currentEvalMG -= PAWN_SCORE + PAWN_TABLE_MG[fromFlipped];
         currentEvalEG -= PAWN_SCORE + PAWN_TABLE_EG[fromFlipped];
 
         // Add promoted piece - using lookup tables would be faster here
+        // (the color bitboards are updated by makeMove afterwards: counts below exclude the new piece)
         switch (promoType) {
             case KNIGHT:
-                whiteKnights |= toBB;
+                knights |= toBB;
                 currentEvalMG += KNIGHT_SCORE + KNIGHT_TABLE_MG[toFlipped];
                 currentEvalEG += KNIGHT_SCORE + KNIGHT_TABLE_EG[toFlipped];
                 phase += 1;
                 zobristKey ^= Zobrist.PIECE_KEYS[WHITE][KNIGHT][to];
+                materialKey ^= Zobrist.PIECE_KEYS[WHITE][KNIGHT][Long.bitCount(knights & whitePieces)];
                 break;
             case BISHOP:
-                whiteBishops |= toBB;
+                bishops |= toBB;
                 currentEvalMG += BISHOP_SCORE + BISHOP_TABLE_MG[toFlipped];
                 currentEvalEG += BISHOP_SCORE + BISHOP_TABLE_EG[toFlipped];
                 phase += 1;
                 zobristKey ^= Zobrist.PIECE_KEYS[WHITE][BISHOP][to];
+                materialKey ^= Zobrist.PIECE_KEYS[WHITE][BISHOP][Long.bitCount(bishops & whitePieces)];
                 break;
             case ROOK:
-                whiteRooks |= toBB;
+                rooks |= toBB;
                 currentEvalMG += ROOK_SCORE + ROOK_TABLE_MG[toFlipped];
                 currentEvalEG += ROOK_SCORE + ROOK_TABLE_EG[toFlipped];
                 phase += 2;
                 zobristKey ^= Zobrist.PIECE_KEYS[WHITE][ROOK][to];
+                materialKey ^= Zobrist.PIECE_KEYS[WHITE][ROOK][Long.bitCount(rooks & whitePieces)];
                 break;
             case QUEEN:
-                whiteQueens |= toBB;
+                queens |= toBB;
                 currentEvalMG += QUEEN_SCORE + QUEEN_TABLE_MG[toFlipped];
                 currentEvalEG += QUEEN_SCORE + QUEEN_TABLE_EG[toFlipped];
                 phase += 4;
                 zobristKey ^= Zobrist.PIECE_KEYS[WHITE][QUEEN][to];
+                materialKey ^= Zobrist.PIECE_KEYS[WHITE][QUEEN][Long.bitCount(queens & whitePieces)];
                 break;
         }
     }
@@ -1573,17 +1730,17 @@ public class Board {
     private void handleWhiteRookMove(int from, int to, long fromBB, long toBB,
             int fromFlipped, int toFlipped) {
         // Check castling rights with bitwise comparison
-        if ((fromBB & A1) != 0 && whiteCastleQueenSide != 0) {
+        if ((fromBB & A1) != 0 && (castlingRights & WHITE_QUEEN_SIDE_CASTLING) != 0) {
             zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
-            whiteCastleQueenSide = 0L;
+            castlingRights &= ~WHITE_QUEEN_SIDE_CASTLING;
             zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
-        } else if ((fromBB & H1) != 0 && whiteCastleKingSide != 0) {
+        } else if ((fromBB & H1) != 0 && (castlingRights & WHITE_KING_SIDE_CASTLING) != 0) {
             zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
-            whiteCastleKingSide = 0L;
+            castlingRights &= ~WHITE_KING_SIDE_CASTLING;
             zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
         }
 
-        whiteRooks = (whiteRooks & ~fromBB) | toBB;
+        rooks = (rooks & ~fromBB) | toBB;
         currentEvalMG += ROOK_TABLE_MG[toFlipped] - ROOK_TABLE_MG[fromFlipped];
         currentEvalEG += ROOK_TABLE_EG[toFlipped] - ROOK_TABLE_EG[fromFlipped];
         zobristKey ^= Zobrist.PIECE_KEYS[WHITE][ROOK][from] ^
@@ -1594,20 +1751,19 @@ public class Board {
             int fromFlipped, int toFlipped, int flags) {
         // Check for castling
         if ((toBB & (C1 | G1)) != 0 &&
-                (whiteCastleQueenSide != 0 || whiteCastleKingSide != 0)) {
+                (castlingRights & WHITE_CASTLING) != 0) {
             if ((toBB & C1) != 0) {
                 processWhiteCastleQueenSide(fromBB);
             } else {
                 processWhiteCastleKingSide(fromBB);
             }
         } else {
-            whiteKing = toBB;
+            kings = (kings & ~fromBB) | toBB;
 
             // Update castling rights if they exist
-            if ((whiteCastleKingSide | whiteCastleQueenSide) != 0) {
+            if ((castlingRights & WHITE_CASTLING) != 0) {
                 zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
-                whiteCastleQueenSide = 0L;
-                whiteCastleKingSide = 0L;
+                castlingRights &= ~WHITE_CASTLING;
                 zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
             }
 
@@ -1625,34 +1781,39 @@ public class Board {
             int flags, int move) {
         if (flags == Move.EN_PASSANT) {
             long capturedPawn = enPassantSquare << 8;
-            whitePawns &= ~capturedPawn;
+            pawns &= ~capturedPawn;
             zobristKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][Long.numberOfTrailingZeros(capturedPawn)];
+            pawnKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][Long.numberOfTrailingZeros(capturedPawn)];
+            materialKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][Long.bitCount(pawns & whitePieces)];
 
-            blackPawns = (blackPawns & ~fromBB) | toBB;
+            pawns = (pawns & ~fromBB) | toBB;
             currentEvalMG -= PAWN_TABLE_MG[to] - PAWN_TABLE_MG[from];
             currentEvalEG -= PAWN_TABLE_EG[to] - PAWN_TABLE_EG[from];
             zobristKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][from] ^
                     Zobrist.PIECE_KEYS[BLACK][PAWN][to];
+            pawnKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][from] ^ Zobrist.PIECE_KEYS[BLACK][PAWN][to];
         } else if (flags == Move.DOUBLE_PAWN_PUSH) {
             if (enPassantSquare != 0) {
                 zobristKey ^= Zobrist.EN_PASSANT_KEYS[Long.numberOfTrailingZeros(enPassantSquare)];
             }
             enPassantSquare = toBB << 8;
 
-            blackPawns = (blackPawns & ~fromBB) | toBB;
+            pawns = (pawns & ~fromBB) | toBB;
             currentEvalMG -= PAWN_TABLE_MG[to] - PAWN_TABLE_MG[from];
             currentEvalEG -= PAWN_TABLE_EG[to] - PAWN_TABLE_EG[from];
             zobristKey ^= Zobrist.EN_PASSANT_KEYS[Long.numberOfTrailingZeros(enPassantSquare)] ^
                     Zobrist.PIECE_KEYS[BLACK][PAWN][from] ^
                     Zobrist.PIECE_KEYS[BLACK][PAWN][to];
+            pawnKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][from] ^ Zobrist.PIECE_KEYS[BLACK][PAWN][to];
         } else if (flags == Move.PROMOTION) {
             handleBlackPromotion(from, to, fromBB, toBB, move);
         } else {
-            blackPawns = (blackPawns & ~fromBB) | toBB;
+            pawns = (pawns & ~fromBB) | toBB;
             currentEvalMG -= PAWN_TABLE_MG[to] - PAWN_TABLE_MG[from];
             currentEvalEG -= PAWN_TABLE_EG[to] - PAWN_TABLE_EG[from];
             zobristKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][from] ^
                     Zobrist.PIECE_KEYS[BLACK][PAWN][to];
+            pawnKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][from] ^ Zobrist.PIECE_KEYS[BLACK][PAWN][to];
         }
     }
 
@@ -1660,59 +1821,66 @@ public class Board {
         int promoType = PackedMove.getPromotion(move);
 
         // Remove pawn
-        blackPawns &= ~fromBB;
+        pawns &= ~fromBB;
         zobristKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][from];
+        pawnKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][from];
+        materialKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][Long.bitCount(pawns & blackPieces)];
 
         // Common eval update for removing pawn
         currentEvalMG += PAWN_SCORE + PAWN_TABLE_MG[from];
         currentEvalEG += PAWN_SCORE + PAWN_TABLE_EG[from];
 
         // Add promoted piece
+        // (the color bitboards are updated by makeMove afterwards: counts below exclude the new piece)
         switch (promoType) {
             case KNIGHT:
-                blackKnights |= toBB;
+                knights |= toBB;
                 currentEvalMG -= KNIGHT_SCORE + KNIGHT_TABLE_MG[to];
                 currentEvalEG -= KNIGHT_SCORE + KNIGHT_TABLE_EG[to];
                 phase += 1;
                 zobristKey ^= Zobrist.PIECE_KEYS[BLACK][KNIGHT][to];
+                materialKey ^= Zobrist.PIECE_KEYS[BLACK][KNIGHT][Long.bitCount(knights & blackPieces)];
                 break;
             case BISHOP:
-                blackBishops |= toBB;
+                bishops |= toBB;
                 currentEvalMG -= BISHOP_SCORE + BISHOP_TABLE_MG[to];
                 currentEvalEG -= BISHOP_SCORE + BISHOP_TABLE_EG[to];
                 phase += 1;
                 zobristKey ^= Zobrist.PIECE_KEYS[BLACK][BISHOP][to];
+                materialKey ^= Zobrist.PIECE_KEYS[BLACK][BISHOP][Long.bitCount(bishops & blackPieces)];
                 break;
             case ROOK:
-                blackRooks |= toBB;
+                rooks |= toBB;
                 currentEvalMG -= ROOK_SCORE + ROOK_TABLE_MG[to];
                 currentEvalEG -= ROOK_SCORE + ROOK_TABLE_EG[to];
                 phase += 2;
                 zobristKey ^= Zobrist.PIECE_KEYS[BLACK][ROOK][to];
+                materialKey ^= Zobrist.PIECE_KEYS[BLACK][ROOK][Long.bitCount(rooks & blackPieces)];
                 break;
             case QUEEN:
-                blackQueens |= toBB;
+                queens |= toBB;
                 currentEvalMG -= QUEEN_SCORE + QUEEN_TABLE_MG[to];
                 currentEvalEG -= QUEEN_SCORE + QUEEN_TABLE_EG[to];
                 phase += 4;
                 zobristKey ^= Zobrist.PIECE_KEYS[BLACK][QUEEN][to];
+                materialKey ^= Zobrist.PIECE_KEYS[BLACK][QUEEN][Long.bitCount(queens & blackPieces)];
                 break;
         }
     }
 
     private void handleBlackRookMove(int from, int to, long fromBB, long toBB) {
         // Check castling rights with bitwise comparison
-        if ((fromBB & A8) != 0 && blackCastleQueenSide != 0) {
+        if ((fromBB & A8) != 0 && (castlingRights & BLACK_QUEEN_SIDE_CASTLING) != 0) {
             zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
-            blackCastleQueenSide = 0L;
+            castlingRights &= ~BLACK_QUEEN_SIDE_CASTLING;
             zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
-        } else if ((fromBB & H8) != 0 && blackCastleKingSide != 0) {
+        } else if ((fromBB & H8) != 0 && (castlingRights & BLACK_KING_SIDE_CASTLING) != 0) {
             zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
-            blackCastleKingSide = 0L;
+            castlingRights &= ~BLACK_KING_SIDE_CASTLING;
             zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
         }
 
-        blackRooks = (blackRooks & ~fromBB) | toBB;
+        rooks = (rooks & ~fromBB) | toBB;
         currentEvalMG -= ROOK_TABLE_MG[to] - ROOK_TABLE_MG[from];
         currentEvalEG -= ROOK_TABLE_EG[to] - ROOK_TABLE_EG[from];
         zobristKey ^= Zobrist.PIECE_KEYS[BLACK][ROOK][from] ^
@@ -1722,20 +1890,19 @@ public class Board {
     private void handleBlackKingMove(int from, int to, long fromBB, long toBB, int flags) {
         // Check for castling
         if ((toBB & (C8 | G8)) != 0 &&
-                (blackCastleQueenSide != 0 || blackCastleKingSide != 0)) {
+                (castlingRights & BLACK_CASTLING) != 0) {
             if ((toBB & C8) != 0) {
                 processBlackCastleQueenSide(fromBB);
             } else {
                 processBlackCastleKingSide(fromBB);
             }
         } else {
-            blackKing = toBB;
+            kings = (kings & ~fromBB) | toBB;
 
             // Update castling rights if they exist
-            if ((blackCastleKingSide | blackCastleQueenSide) != 0) {
+            if ((castlingRights & BLACK_CASTLING) != 0) {
                 zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
-                blackCastleQueenSide = 0L;
-                blackCastleKingSide = 0L;
+                castlingRights &= ~BLACK_CASTLING;
                 zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
             }
 
@@ -1750,157 +1917,260 @@ public class Board {
     }
 
     // Optimized capture handlers with early returns
-    public final void handleCaptureWhite(long toBB) {
+    public final int handleCaptureWhite(long toBB) {
         final int toSquare = Long.numberOfTrailingZeros(toBB);
 
-        if ((blackPawns & toBB) != 0) {
-            blackPawns &= ~toBB;
-            currentEvalMG += PAWN_SCORE + PAWN_TABLE_MG[toSquare];
-            currentEvalEG += PAWN_SCORE + PAWN_TABLE_EG[toSquare];
-            zobristKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][toSquare];
-            return;
-        }
-        if ((blackKnights & toBB) != 0) {
-            blackKnights &= ~toBB;
-            currentEvalMG += KNIGHT_SCORE + KNIGHT_TABLE_MG[toSquare];
-            currentEvalEG += KNIGHT_SCORE + KNIGHT_TABLE_EG[toSquare];
-            phase -= 1;
-            zobristKey ^= Zobrist.PIECE_KEYS[BLACK][KNIGHT][toSquare];
-            return;
-        }
-        if ((blackBishops & toBB) != 0) {
-            blackBishops &= ~toBB;
-            currentEvalMG += BISHOP_SCORE + BISHOP_TABLE_MG[toSquare];
-            currentEvalEG += BISHOP_SCORE + BISHOP_TABLE_EG[toSquare];
-            phase -= 1;
-            zobristKey ^= Zobrist.PIECE_KEYS[BLACK][BISHOP][toSquare];
-            return;
-        }
-        if ((blackRooks & toBB) != 0) {
-            blackRooks &= ~toBB;
-            currentEvalMG += ROOK_SCORE + ROOK_TABLE_MG[toSquare];
-            currentEvalEG += ROOK_SCORE + ROOK_TABLE_EG[toSquare];
-            phase -= 2;
-            zobristKey ^= Zobrist.PIECE_KEYS[BLACK][ROOK][toSquare];
-            return;
-        }
-        if ((blackQueens & toBB) != 0) {
-            blackQueens &= ~toBB;
-            currentEvalMG += QUEEN_SCORE + QUEEN_TABLE_MG[toSquare];
-            currentEvalEG += QUEEN_SCORE + QUEEN_TABLE_EG[toSquare];
-            phase -= 4;
-            zobristKey ^= Zobrist.PIECE_KEYS[BLACK][QUEEN][toSquare];
-        }
-    }
-
-    public final void handleCaptureBlack(long toBB) {
+        // the mailbox still holds the captured piece, makeMove overwrites it afterwards
+        switch (mailbox[toSquare]) {
+            case PAWN:
+                pawns &= ~toBB;
+                currentEvalMG += PAWN_SCORE + PAWN_TABLE_MG[toSquare];
+                currentEvalEG += PAWN_SCORE + PAWN_TABLE_EG[toSquare];
+                zobristKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][toSquare];
+                pawnKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][toSquare];
+                materialKey ^= Zobrist.PIECE_KEYS[BLACK][PAWN][Long.bitCount(pawns & blackPieces)];
+                return PAWN;
+            case KNIGHT:
+                knights &= ~toBB;
+                currentEvalMG += KNIGHT_SCORE + KNIGHT_TABLE_MG[toSquare];
+                currentEvalEG += KNIGHT_SCORE + KNIGHT_TABLE_EG[toSquare];
+                phase -= 1;
+                zobristKey ^= Zobrist.PIECE_KEYS[BLACK][KNIGHT][toSquare];
+                materialKey ^= Zobrist.PIECE_KEYS[BLACK][KNIGHT][Long.bitCount(knights & blackPieces)];
+                return KNIGHT;
+            case BISHOP:
+                bishops &= ~toBB;
+                currentEvalMG += BISHOP_SCORE + BISHOP_TABLE_MG[toSquare];
+                currentEvalEG += BISHOP_SCORE + BISHOP_TABLE_EG[toSquare];
+                phase -= 1;
+                zobristKey ^= Zobrist.PIECE_KEYS[BLACK][BISHOP][toSquare];
+                materialKey ^= Zobrist.PIECE_KEYS[BLACK][BISHOP][Long.bitCount(bishops & blackPieces)];
+                return BISHOP;
+            case ROOK:
+                rooks &= ~toBB;
+                currentEvalMG += ROOK_SCORE + ROOK_TABLE_MG[toSquare];
+                currentEvalEG += ROOK_SCORE + ROOK_TABLE_EG[toSquare];
+                phase -= 2;
+                zobristKey ^= Zobrist.PIECE_KEYS[BLACK][ROOK][toSquare];
+                materialKey ^= Zobrist.PIECE_KEYS[BLACK][ROOK][Long.bitCount(rooks & blackPieces)];
+                return ROOK;
+            case QUEEN:
+                queens &= ~toBB;
+                currentEvalMG += QUEEN_SCORE + QUEEN_TABLE_MG[toSquare];
+                currentEvalEG += QUEEN_SCORE + QUEEN_TABLE_EG[toSquare];
+                phase -= 4;
+                zobristKey ^= Zobrist.PIECE_KEYS[BLACK][QUEEN][toSquare];
+                materialKey ^= Zobrist.PIECE_KEYS[BLACK][QUEEN][Long.bitCount(queens & blackPieces)];
+                return QUEEN;
+        }
+        return EMPTY;
+    }
+
+    public final int handleCaptureBlack(long toBB) {
         final int toSquare = Long.numberOfTrailingZeros(toBB);
         final int toSquareFlipped = toSquare ^ 56;
 
-        if ((whitePawns & toBB) != 0) {
-            whitePawns &= ~toBB;
-            currentEvalMG -= PAWN_SCORE + PAWN_TABLE_MG[toSquareFlipped];
-            currentEvalEG -= PAWN_SCORE + PAWN_TABLE_EG[toSquareFlipped];
-            zobristKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][toSquare];
-            return;
-        }
-        if ((whiteKnights & toBB) != 0) {
-            whiteKnights &= ~toBB;
-            currentEvalMG -= KNIGHT_SCORE + KNIGHT_TABLE_MG[toSquareFlipped];
-            currentEvalEG -= KNIGHT_SCORE + KNIGHT_TABLE_EG[toSquareFlipped];
-            phase -= 1;
-            zobristKey ^= Zobrist.PIECE_KEYS[WHITE][KNIGHT][toSquare];
-            return;
-        }
-        if ((whiteBishops & toBB) != 0) {
-            whiteBishops &= ~toBB;
-            currentEvalMG -= BISHOP_SCORE + BISHOP_TABLE_MG[toSquareFlipped];
-            currentEvalEG -= BISHOP_SCORE + BISHOP_TABLE_EG[toSquareFlipped];
-            phase -= 1;
-            zobristKey ^= Zobrist.PIECE_KEYS[WHITE][BISHOP][toSquare];
-            return;
-        }
-        if ((whiteRooks & toBB) != 0) {
-            whiteRooks &= ~toBB;
-            currentEvalMG -= ROOK_SCORE + ROOK_TABLE_MG[toSquareFlipped];
-            currentEvalEG -= ROOK_SCORE + ROOK_TABLE_EG[toSquareFlipped];
-            phase -= 2;
-            zobristKey ^= Zobrist.PIECE_KEYS[WHITE][ROOK][toSquare];
-            return;
-        }
-        if ((whiteQueens & toBB) != 0) {
-            whiteQueens &= ~toBB;
-            currentEvalMG -= QUEEN_SCORE + QUEEN_TABLE_MG[toSquareFlipped];
-            currentEvalEG -= QUEEN_SCORE + QUEEN_TABLE_EG[toSquareFlipped];
-            phase -= 4;
-            zobristKey ^= Zobrist.PIECE_KEYS[WHITE][QUEEN][toSquare];
+        // the mailbox still holds the captured piece, makeMove overwrites it afterwards
+        switch (mailbox[toSquare]) {
+            case PAWN:
+                pawns &= ~toBB;
+                currentEvalMG -= PAWN_SCORE + PAWN_TABLE_MG[toSquareFlipped];
+                currentEvalEG -= PAWN_SCORE + PAWN_TABLE_EG[toSquareFlipped];
+                zobristKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][toSquare];
+                pawnKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][toSquare];
+                materialKey ^= Zobrist.PIECE_KEYS[WHITE][PAWN][Long.bitCount(pawns & whitePieces)];
+                return PAWN;
+            case KNIGHT:
+                knights &= ~toBB;
+                currentEvalMG -= KNIGHT_SCORE + KNIGHT_TABLE_MG[toSquareFlipped];
+                currentEvalEG -= KNIGHT_SCORE + KNIGHT_TABLE_EG[toSquareFlipped];
+                phase -= 1;
+                zobristKey ^= Zobrist.PIECE_KEYS[WHITE][KNIGHT][toSquare];
+                materialKey ^= Zobrist.PIECE_KEYS[WHITE][KNIGHT][Long.bitCount(knights & whitePieces)];
+                return KNIGHT;
+            case BISHOP:
+                bishops &= ~toBB;
+                currentEvalMG -= BISHOP_SCORE + BISHOP_TABLE_MG[toSquareFlipped];
+                currentEvalEG -= BISHOP_SCORE + BISHOP_TABLE_EG[toSquareFlipped];
+                phase -= 1;
+                zobristKey ^= Zobrist.PIECE_KEYS[WHITE][BISHOP][toSquare];
+                materialKey ^= Zobrist.PIECE_KEYS[WHITE][BISHOP][Long.bitCount(bishops & whitePieces)];
+                return BISHOP;
+            case ROOK:
+                rooks &= ~toBB;
+                currentEvalMG -= ROOK_SCORE + ROOK_TABLE_MG[toSquareFlipped];
+                currentEvalEG -= ROOK_SCORE + ROOK_TABLE_EG[toSquareFlipped];
+                phase -= 2;
+                zobristKey ^= Zobrist.PIECE_KEYS[WHITE][ROOK][toSquare];
+                materialKey ^= Zobrist.PIECE_KEYS[WHITE][ROOK][Long.bitCount(rooks & whitePieces)];
+                return ROOK;
+            case QUEEN:
+                queens &= ~toBB;
+                currentEvalMG -= QUEEN_SCORE + QUEEN_TABLE_MG[toSquareFlipped];
+                currentEvalEG -= QUEEN_SCORE + QUEEN_TABLE_EG[toSquareFlipped];
+                phase -= 4;
+                zobristKey ^= Zobrist.PIECE_KEYS[WHITE][QUEEN][toSquare];
+                materialKey ^= Zobrist.PIECE_KEYS[WHITE][QUEEN][Long.bitCount(queens & whitePieces)];
+                return QUEEN;
         }
+        return EMPTY;
     }
 
     public void undoMove() {
-        if (!history.isEmpty()) {
-            BoardHistory last = history.pop();
-            last.restoreTo(this);
-            plyCount--;
+        if (history.isEmpty()) {
+            throw new IllegalStateException("No move to undo");
+        }
+
+        BoardHistory last = history.pop();
+        // the parent position's attack info, still valid: swap it back
+        AttackInfo child = attackInfo;
+        attackInfo = last.attackInfo;
+        last.attackInfo = child;
+        whiteTurn = !whiteTurn;
+        plyCount--;
+
+        // move 0 is a null move: nothing to put back on the board
+        if (last.move != 0) {
+            unmakePieces(last.move, last.captured);
+        }
+
+        last.restoreTo(this);
+    }
 
+    // Move the pieces back, whiteTurn is already the side that played the move
+    private void unmakePieces(int move, int captured) {
+        final int from = PackedMove.getFrom(move);
+        final int to = PackedMove.getTo(move);
+        final int flags = PackedMove.getFlags(move);
+        final long fromBB = 1L << from;
+        final long toBB = 1L << to;
+
+        long moved = fromBB | toBB;
+
+        if (flags == Move.PROMOTION) {
+            togglePiece(PackedMove.getPromotion(move), toBB);
+            togglePiece(PAWN, fromBB);
+            mailbox[from] = PAWN;
         } else {
-            throw new IllegalStateException("No move to undo");
+            int piece = mailbox[to];
+            togglePiece(piece, moved);
+            mailbox[from] = (byte) piece;
+
+            // castling, the rook goes back to its corner
+            if (piece == KING && Math.abs(from - to) == 2) {
+                int rank = from & 56;
+                int corner = to > from ? rank + 7 : rank;
+                int castled = to > from ? rank + 5 : rank + 3;
+                long rook = (1L << corner) | (1L << castled);
+                togglePiece(ROOK, rook);
+                mailbox[castled] = EMPTY;
+                mailbox[corner] = ROOK;
+                moved ^= rook;
+            }
+        }
+        mailbox[to] = EMPTY;
+
+        long capturedBB = 0L;
+        if (captured != EMPTY) {
+            capturedBB = flags == Move.EN_PASSANT
+                    ? (whiteTurn ? toBB >>> 8 : toBB << 8)
+                    : toBB;
+            togglePiece(captured, capturedBB);
+            mailbox[Long.numberOfTrailingZeros(capturedBB)] = (byte) captured;
+        }
+
+        // occupancy is updated from the squares that changed, togglePiece only touches the type boards
+        if (whiteTurn) {
+            whitePieces ^= moved;
+            blackPieces ^= capturedBB;
+        } else {
+            blackPieces ^= moved;
+            whitePieces ^= capturedBB;
         }
     }
 
+    // Mailbox side of makeMove, whiteTurn is still the side playing the move (castling rook: processXCastleY)
+    private void updateMailbox(int piece, int from, int to, int flags, int move) {
+        mailbox[from] = EMPTY;
+
+        if (piece == PAWN) {
+            if (flags == Move.PROMOTION) {
+                mailbox[to] = (byte) PackedMove.getPromotion(move);
+                return;
+            }
+            if (flags == Move.EN_PASSANT) {
+                mailbox[whiteTurn ? to - 8 : to + 8] = EMPTY;
+            }
+        }
+        mailbox[to] = (byte) piece;
+    }
 
-    public final void restoreBoardHistory(BoardHistory boardHistory) {
-        bitboard = boardHistory.bitboard;
-        whitePawns = boardHistory.whitePawns;
-        whiteKnights = boardHistory.whiteKnights;
-        whiteBishops = boardHistory.whiteBishops;
-        whiteRooks = boardHistory.whiteRooks;
-        whiteQueens = boardHistory.whiteQueens;
-        whiteKing = boardHistory.whiteKing;
-        blackPawns = boardHistory.blackPawns;
-        blackKnights = boardHistory.blackKnights;
-        blackBishops = boardHistory.blackBishops;
-        blackRooks = boardHistory.blackRooks;
-        blackQueens = boardHistory.blackQueens;
-        blackKing = boardHistory.blackKing;
-        whiteCastleQueenSide = boardHistory.whiteCastleQueenSide;
-        whiteCastleKingSide = boardHistory.whiteCastleKingSide;
-        blackCastleQueenSide = boardHistory.blackCastleQueenSide;
-        blackCastleKingSide = boardHistory.blackCastleKingSide;
-        enPassantSquare = boardHistory.enPassantSquare;
-        whiteTurn = boardHistory.whiteTurn;
 
-        currentEvalMG = boardHistory.evalMG;
-        currentEvalEG = boardHistory.evalEG;
+    // Rebuild the mailbox from the bitboards (position setup only)
+    private void updateMailbox() {
+        Arrays.fill(mailbox, (byte) EMPTY);
+        fillMailbox(pawns, PAWN);
+        fillMailbox(knights, KNIGHT);
+        fillMailbox(bishops, BISHOP);
+        fillMailbox(rooks, ROOK);
+        fillMailbox(queens, QUEEN);
+        fillMailbox(kings, KING);
+    }
 
-        phase = boardHistory.phase;
-        zobristKey = boardHistory.zobristKey;
+    private void fillMailbox(long pieces, int piece) {
+        while (pieces != 0L) {
+            mailbox[Long.numberOfTrailingZeros(pieces)] = (byte) piece;
+            pieces &= pieces - 1;
+        }
+    }
 
-        whitePieces = whitePawns | whiteKnights | whiteBishops | whiteRooks | whiteQueens | whiteKing;
-        blackPieces = blackPawns | blackKnights | blackBishops | blackRooks | blackQueens | blackKing;
+    // Type board only, the color boards are updated by the caller
+    private void togglePiece(int piece, long mask) {
+        switch (piece) {
+            case PAWN:
+                pawns ^= mask;
+                break;
+            case KNIGHT:
+                knights ^= mask;
+                break;
+            case BISHOP:
+                bishops ^= mask;
+                break;
+            case ROOK:
+                rooks ^= mask;
+                break;
+            case QUEEN:
+                queens ^= mask;
+                break;
+            case KING:
+                kings ^= mask;
+                break;
+        }
     }
 
     public void processWhiteCastleKingSide(long fromBitboard) {
         // Roque du côté du roi
-        whiteKing &= ~fromBitboard;
-        whiteKing |= 1L << 6;
-        whiteRooks &= ~(1L << 7);
-        whiteRooks |= 1L << 5;
+        long kingTo = 1L << 6;
+        long rookMove = (1L << 7) | (1L << 5);
+        kings = (kings & ~fromBitboard) | kingTo;
+        rooks ^= rookMove;
+        whitePieces ^= rookMove;
+        mailbox[7] = EMPTY;
+        mailbox[5] = ROOK;
 
         this.zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
 
-        whiteCastleKingSide = 0L;
-        whiteCastleQueenSide = 0L;
+        castlingRights &= ~WHITE_CASTLING;
 
         // Update evaluations for both phases
-        currentEvalMG += KING_MIDDLE_GAME_TABLE_MG[Long.numberOfTrailingZeros(whiteKing) ^ 56]
+        currentEvalMG += KING_MIDDLE_GAME_TABLE_MG[6 ^ 56]
                 - KING_MIDDLE_GAME_TABLE_MG[Long.numberOfTrailingZeros(fromBitboard) ^ 56];
-        currentEvalEG += KING_END_GAME_TABLE_EG[Long.numberOfTrailingZeros(whiteKing) ^ 56]
+        currentEvalEG += KING_END_GAME_TABLE_EG[6 ^ 56]
                 - KING_END_GAME_TABLE_EG[Long.numberOfTrailingZeros(fromBitboard) ^ 56];
 
         // Update evaluations for rook
-        currentEvalMG += ROOK_TABLE_MG[Long.numberOfTrailingZeros(whiteRooks & (1L << 5)) ^ 56] - ROOK_TABLE_MG[7 ^ 56];
-        currentEvalEG += ROOK_TABLE_EG[Long.numberOfTrailingZeros(whiteRooks & (1L << 5)) ^ 56] - ROOK_TABLE_EG[7 ^ 56];
+        currentEvalMG += ROOK_TABLE_MG[5 ^ 56] - ROOK_TABLE_MG[7 ^ 56];
+        currentEvalEG += ROOK_TABLE_EG[5 ^ 56] - ROOK_TABLE_EG[7 ^ 56];
 
         // Update ZobristKey for the rook (before and after)
         this.zobristKey ^= Zobrist.PIECE_KEYS[WHITE][ROOK][7]; // Remove the rook from H1
@@ -1912,25 +2182,27 @@ public class Board {
 
     public void processWhiteCastleQueenSide(long fromBitboard) {
         // Roque du côté de la reine
-        whiteKing &= ~fromBitboard;
-        whiteKing |= 1L << 2;
-        whiteRooks &= ~(1L << 0);
-        whiteRooks |= 1L << 3;
+        long kingTo = 1L << 2;
+        long rookMove = (1L << 0) | (1L << 3);
+        kings = (kings & ~fromBitboard) | kingTo;
+        rooks ^= rookMove;
+        whitePieces ^= rookMove;
+        mailbox[0] = EMPTY;
+        mailbox[3] = ROOK;
 
         this.zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
 
-        whiteCastleKingSide = 0L;
-        whiteCastleQueenSide = 0L;
+        castlingRights &= ~WHITE_CASTLING;
 
         // Update evaluations for both phases
-        currentEvalMG += KING_MIDDLE_GAME_TABLE_MG[Long.numberOfTrailingZeros(whiteKing) ^ 56]
+        currentEvalMG += KING_MIDDLE_GAME_TABLE_MG[2 ^ 56]
                 - KING_MIDDLE_GAME_TABLE_MG[Long.numberOfTrailingZeros(fromBitboard) ^ 56];
-        currentEvalEG += KING_END_GAME_TABLE_EG[Long.numberOfTrailingZeros(whiteKing) ^ 56]
+        currentEvalEG += KING_END_GAME_TABLE_EG[2 ^ 56]
                 - KING_END_GAME_TABLE_EG[Long.numberOfTrailingZeros(fromBitboard) ^ 56];
 
         // Update evaluations for rook
-        currentEvalMG += ROOK_TABLE_MG[Long.numberOfTrailingZeros(whiteRooks & (1L << 3)) ^ 56] - ROOK_TABLE_MG[0 ^ 56];
-        currentEvalEG += ROOK_TABLE_EG[Long.numberOfTrailingZeros(whiteRooks & (1L << 3)) ^ 56] - ROOK_TABLE_EG[0 ^ 56];
+        currentEvalMG += ROOK_TABLE_MG[3 ^ 56] - ROOK_TABLE_MG[0 ^ 56];
+        currentEvalEG += ROOK_TABLE_EG[3 ^ 56] - ROOK_TABLE_EG[0 ^ 56];
 
         // Update ZobristKey for the rook (before and after)
         this.zobristKey ^= Zobrist.PIECE_KEYS[WHITE][ROOK][0]; // Remove the rook from A1
@@ -1942,25 +2214,27 @@ public class Board {
 
     public void processBlackCastleKingSide(long fromBitboard) {
         // Roque du côté du roi
-        blackKing &= ~fromBitboard;
-        blackKing |= 1L << 62;
-        blackRooks &= ~(1L << 63);
-        blackRooks |= 1L << 61;
+        long kingTo = 1L << 62;
+        long rookMove = (1L << 63) | (1L << 61);
+        kings = (kings & ~fromBitboard) | kingTo;
+        rooks ^= rookMove;
+        blackPieces ^= rookMove;
+        mailbox[63] = EMPTY;
+        mailbox[61] = ROOK;
 
         this.zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
 
-        blackCastleKingSide = 0L;
-        blackCastleQueenSide = 0L;
+        castlingRights &= ~BLACK_CASTLING;
 
         // Update evaluations for both phases
-        currentEvalMG -= KING_MIDDLE_GAME_TABLE_MG[Long.numberOfTrailingZeros(blackKing)]
+        currentEvalMG -= KING_MIDDLE_GAME_TABLE_MG[62]
                 - KING_MIDDLE_GAME_TABLE_MG[Long.numberOfTrailingZeros(fromBitboard)];
-        currentEvalEG -= KING_END_GAME_TABLE_EG[Long.numberOfTrailingZeros(blackKing)]
+        currentEvalEG -= KING_END_GAME_TABLE_EG[62]
                 - KING_END_GAME_TABLE_EG[Long.numberOfTrailingZeros(fromBitboard)];
 
         // Update evaluations for rook
-        currentEvalMG -= ROOK_TABLE_MG[Long.numberOfTrailingZeros(blackRooks & (1L << 61))] - ROOK_TABLE_MG[63];
-        currentEvalEG -= ROOK_TABLE_EG[Long.numberOfTrailingZeros(blackRooks & (1L << 61))] - ROOK_TABLE_EG[63];
+        currentEvalMG -= ROOK_TABLE_MG[61] - ROOK_TABLE_MG[63];
+        currentEvalEG -= ROOK_TABLE_EG[61] - ROOK_TABLE_EG[63];
 
         // Update ZobristKey for the rook (before and after)
         this.zobristKey ^= Zobrist.PIECE_KEYS[BLACK][ROOK][63]; // Remove the rook from H8
@@ -1972,25 +2246,27 @@ public class Board {
 
     public void processBlackCastleQueenSide(long fromBitboard) {
         // Roque du côté de la reine
-        blackKing &= ~fromBitboard;
-        blackKing |= 1L << 58;
-        blackRooks &= ~(1L << 56);
-        blackRooks |= 1L << 59;
+        long kingTo = 1L << 58;
+        long rookMove = (1L << 56) | (1L << 59);
+        kings = (kings & ~fromBitboard) | kingTo;
+        rooks ^= rookMove;
+        blackPieces ^= rookMove;
+        mailbox[56] = EMPTY;
+        mailbox[59] = ROOK;
 
         this.zobristKey ^= Zobrist.CASTLING_KEYS[getCastlingRights()];
 
-        blackCastleKingSide = 0L;
-        blackCastleQueenSide = 0L;
+        castlingRights &= ~BLACK_CASTLING;
 
         // Update evaluations for both phases
-        currentEvalMG -= KING_MIDDLE_GAME_TABLE_MG[Long.numberOfTrailingZeros(blackKing)]
+        currentEvalMG -= KING_MIDDLE_GAME_TABLE_MG[58]
                 - KING_MIDDLE_GAME_TABLE_MG[Long.numberOfTrailingZeros(fromBitboard)];
-        currentEvalEG -= KING_END_GAME_TABLE_EG[Long.numberOfTrailingZeros(blackKing)]
+        currentEvalEG -= KING_END_GAME_TABLE_EG[58]
                 - KING_END_GAME_TABLE_EG[Long.numberOfTrailingZeros(fromBitboard)];
 
         // Update evaluations for rook
-        currentEvalMG -= ROOK_TABLE_MG[Long.numberOfTrailingZeros(blackRooks & (1L << 59))] - ROOK_TABLE_MG[56];
-        currentEvalEG -= ROOK_TABLE_EG[Long.numberOfTrailingZeros(blackRooks & (1L << 59))] - ROOK_TABLE_EG[56];
+        currentEvalMG -= ROOK_TABLE_MG[59] - ROOK_TABLE_MG[56];
+        currentEvalEG -= ROOK_TABLE_EG[59] - ROOK_TABLE_EG[56];
 
         // Update ZobristKey for the rook (before and after)
         this.zobristKey ^= Zobrist.PIECE_KEYS[BLACK][ROOK][56]; // Remove the rook from A8
@@ -2048,24 +2324,100 @@ public class Board {
 
     // legal moves
     public PackedMoveList getLegalMoves(PackedMoveList moves) {
-        moves.clear();
-        moves = MoveGenerator.generatePseudoLegalMoves(this, moves);
-
-        // Pour chaque coup, vérifier si le roi est en échec après le coup
-        // Si le roi est en échec, le coup n'est pas légal
-        // Sinon, le coup est légal
-        for (int i = 0; i < moves.size(); i++) {
-            int move = moves.get(i);
-            makeMove(move);
-            if (isKingInCheck(!whiteTurn)) {
-                moves.remove(i);
-                i--;
-            }
-            undoMove();
+        // pins and checks are resolved by the generator, no make/undo filtering
+        return MoveGenerator.generateLegalMoves(this, moves);
+    }
 
+    /**
+     * True if the move (TT move, killer, ...) could be generated in this position, ignoring king safety.
+     * Moves from another position are rejected, so a hash collision cannot reach makeMove.
+     */
+    public boolean isPseudoLegal(int move) {
+        return move != 0 && MoveGenerator.isPseudoLegal(this, move);
+    }
+
+    /** Pseudo legal move that does not leave our king in check. Only call it after isPseudoLegal. */
+    public boolean isLegal(int move) {
+        return MoveGenerator.isLegal(this, move);
+    }
+
+    /**
+     * True if the move, legal in this position, checks the enemy king. Decided before makeMove:
+     * direct checks against the check squares of the moved piece, discovered checks against the blockers.
+     * Promotions, en passant and castling change more than one line and are tested on the resulting occupancy.
+     */
+    public boolean givesCheck(int move) {
+        final AttackInfo info = attackInfo;
+        if (!info.checkInfoValid) {
+            info.computeCheckInfo(this);
         }
 
-        return moves;
+        final int from = PackedMove.getFrom(move);
+        final int to = PackedMove.getTo(move);
+        final long fromBB = 1L << from;
+        final long toBB = 1L << to;
+        final int flags = PackedMove.getFlags(move);
+
+        if (flags == Move.DEFAULT || flags == Move.CAPTURE || flags == Move.DOUBLE_PAWN_PUSH) {
+            if ((info.checkSquares[mailbox[from]] & toBB) != 0L) {
+                return true;
+            }
+            if ((info.discoveredCheckBlockers & fromBB) == 0L) {
+                return false;
+            }
+            int kingSquare = Long.numberOfTrailingZeros(kings & (whiteTurn ? blackPieces : whitePieces));
+            return (MoveGenerator.LINE[kingSquare][from] & toBB) == 0L;
+        }
+
+        final long us = whiteTurn ? whitePieces : blackPieces;
+        final int kingSquare = Long.numberOfTrailingZeros(kings & (whiteTurn ? blackPieces : whitePieces));
+        long occupancy = (getBoard() ^ fromBB) | toBB;
+        long diagonal = (bishops | queens) & us;
+        long straight = (rooks | queens) & us;
+
+        switch (flags) {
+            case Move.PROMOTION: {
+                int promotion = PackedMove.getPromotion(move);
+                if (promotion == KNIGHT) {
+                    if ((KNIGHT_ATTACKS[to] & (1L << kingSquare)) != 0L) {
+                        return true;
+                    }
+                } else {
+                    if (promotion == BISHOP || promotion == QUEEN) diagonal |= toBB;
+                    if (promotion == ROOK || promotion == QUEEN) straight |= toBB;
+                }
+                break;
+            }
+            case Move.EN_PASSANT:
+                if ((info.checkSquares[PAWN] & toBB) != 0L) {
+                    return true;
+                }
+                occupancy ^= whiteTurn ? toBB >>> 8 : toBB << 8;
+                break;
+            case Move.CASTLING: {
+                // rook squares from the king's destination: g1 -> h1/f1, c1 -> a1/d1
+                int rookFrom = to > from ? to + 1 : to - 2;
+                int rookTo = to > from ? to - 1 : to + 1;
+                occupancy = (occupancy ^ (1L << rookFrom)) | (1L << rookTo);
+                straight = (straight & ~(1L << rookFrom)) | (1L << rookTo);
+                break;
+            }
+            default:
+                return false;
+        }
+
+        diagonal &= ~fromBB;
+        straight &= ~fromBB;
+        return (MoveGenerator.getBishopAttacks(kingSquare, occupancy) & diagonal) != 0L
+                || (MoveGenerator.getRookAttacks(kingSquare, occupancy) & straight) != 0L;
+    }
+
+    /** Attack data of the position for the side to move, computed once per position. */
+    public AttackInfo getAttackInfo() {
+        if (!attackInfo.valid) {
+            attackInfo.compute(this);
+        }
+        return attackInfo;
     }
 
     public boolean isKingInCheck(boolean whiteTurn) {
@@ -2073,7 +2425,10 @@ public class Board {
         // long opponentAttacks = MoveGenerator.generateMask(this, !whiteTurn);
         // long king = whiteTurn ? whiteKing : blackKing;
         // return (opponentAttacks & king) != 0;
-        int kingSquare = Long.numberOfTrailingZeros(whiteTurn ? whiteKing : blackKing);
+        if (whiteTurn == this.whiteTurn) {
+            return getAttackInfo().checkers != 0L;
+        }
+        int kingSquare = Long.numberOfTrailingZeros(kings & (whiteTurn ? whitePieces : blackPieces));
         return MoveGenerator.isSquareAttacked(this, kingSquare, !whiteTurn);
     }
 
@@ -2082,24 +2437,7 @@ public class Board {
     }
 
     public PackedMoveList getCaptureMoves(PackedMoveList moves) {
-        moves.clear();
-        MoveGenerator.generateCaptureMoves(this, moves);
-
-        // Pour chaque coup, vérifier si le roi est en échec après le coup
-        // Si le roi est en échec, le coup n'est pas légal
-        // Sinon, le coup est légal
-        for (int i = 0; i < moves.size(); i++) {
-            int move = moves.get(i);
-            makeMove(move);
-            if (isKingInCheck(!whiteTurn)) {
-                moves.remove(i);
-                i--;
-            }
-            undoMove();
-
-        }
-
-        return moves;
+        return MoveGenerator.generateLegalCaptureMoves(this, moves);
     }
 
     public boolean isStaleMate(PackedMoveList moves) {
@@ -2114,13 +2452,6 @@ public class Board {
         return moves.size() == 0 && isKingInCheck(whiteTurn);
     }
 
-    private void updateBitBoard() {
-        whitePieces = whitePawns | whiteKnights | whiteBishops | whiteRooks | whiteQueens | whiteKing;
-        blackPieces = blackPawns | blackKnights | blackBishops | blackRooks | blackQueens | blackKing;
-
-        bitboard = whitePieces | blackPieces;
-    }
-
     public static long getLSB(long bitboard) {
         return Long.lowestOneBit(bitboard);
     }
@@ -2146,46 +2477,11 @@ public class Board {
      *         present.
      */
     public int getPiece(int square) {
-        long mask = 1L << square;
-
-        // Fast reject: if no piece on the square
-        if ((bitboard & mask) == 0L) {
-            return EMPTY;
-        }
-
-        // White pieces
-        if ((whitePawns & mask) != 0L)
-            return PAWN;
-        if ((whiteKnights & mask) != 0L)
-            return KNIGHT;
-        if ((whiteBishops & mask) != 0L)
-            return BISHOP;
-        if ((whiteRooks & mask) != 0L)
-            return ROOK;
-        if ((whiteQueens & mask) != 0L)
-            return QUEEN;
-        if ((whiteKing & mask) != 0L)
-            return KING;
-
-        // Black pieces
-        if ((blackPawns & mask) != 0L)
-            return PAWN;
-        if ((blackKnights & mask) != 0L)
-            return KNIGHT;
-        if ((blackBishops & mask) != 0L)
-            return BISHOP;
-        if ((blackRooks & mask) != 0L)
-            return ROOK;
-        if ((blackQueens & mask) != 0L)
-            return QUEEN;
-        if ((blackKing & mask) != 0L)
-            return KING;
-
-        return EMPTY;
+        return mailbox[square];
     }
 
     public void printBitBoardRaw() {
-        System.out.println(Long.toBinaryString(bitboard));
+        System.out.println(Long.toBinaryString(getBoard()));
     }
 
     public static int getSquare(long bitboard) {
@@ -2224,25 +2520,22 @@ public class Board {
     @Override
     public String toString() {
         return "Bitboard {" +
-                "whitePawns=" + Long.toBinaryString(whitePawns) +
-                ", whiteKnights=" + Long.toBinaryString(whiteKnights) +
-                ", whiteBishops=" + Long.toBinaryString(whiteBishops) +
-                ", whiteRooks=" + Long.toBinaryString(whiteRooks) +
-                ", whiteKing=" + Long.toBinaryString(whiteKing) +
-                ", whiteQueens=" + Long.toBinaryString(whiteQueens) +
-                ", blackPawns=" + Long.toBinaryString(blackPawns) +
-                ", blackKnights=" + Long.toBinaryString(blackKnights) +
-                ", blackBishops=" + Long.toBinaryString(blackBishops) +
-                ", blackRooks=" + Long.toBinaryString(blackRooks) +
-                ", blackKing=" + Long.toBinaryString(blackKing) +
-                ", blackQueens=" + Long.toBinaryString(blackQueens) +
+                "getWhitePawns()=" + Long.toBinaryString(getWhitePawns()) +
+                ", getWhiteKnights()=" + Long.toBinaryString(getWhiteKnights()) +
+                ", getWhiteBishops()=" + Long.toBinaryString(getWhiteBishops()) +
+                ", getWhiteRooks()=" + Long.toBinaryString(getWhiteRooks()) +
+                ", getWhiteKing()=" + Long.toBinaryString(getWhiteKing()) +
+                ", getWhiteQueens()=" + Long.toBinaryString(getWhiteQueens()) +
+                ", getBlackPawns()=" + Long.toBinaryString(getBlackPawns()) +
+                ", getBlackKnights()=" + Long.toBinaryString(getBlackKnights()) +
+                ", getBlackBishops()=" + Long.toBinaryString(getBlackBishops()) +
+                ", getBlackRooks()=" + Long.toBinaryString(getBlackRooks()) +
+                ", getBlackKing()=" + Long.toBinaryString(getBlackKing()) +
+                ", getBlackQueens()=" + Long.toBinaryString(getBlackQueens()) +
                 ", whitePieces=" + Long.toBinaryString(whitePieces) +
                 ", blackPieces=" + Long.toBinaryString(blackPieces) +
-                ", bitboard=" + Long.toBinaryString(bitboard) +
-                ", whiteCastleQueenSide=" + Long.toBinaryString(whiteCastleQueenSide) +
-                ", whiteCastleKingSide=" + Long.toBinaryString(whiteCastleKingSide) +
-                ", blackCastleQueenSide=" + Long.toBinaryString(blackCastleQueenSide) +
-                ", blackCastleKingSide=" + Long.toBinaryString(blackCastleKingSide) +
+                ", bitboard=" + Long.toBinaryString(getBoard()) +
+                ", castlingRights=" + Integer.toBinaryString(castlingRights) +
                 ", enPassantSquare=" + Long.toBinaryString(enPassantSquare) +
                 ", whiteTurn=" + whiteTurn +
                 '}';
@@ -2252,31 +2545,31 @@ public class Board {
         int toSquare = move.to;
         long toBitboard = 1L << toSquare;
         if (whiteTurn) {
-            if ((blackPawns & toBitboard) != 0) {
+            if ((getBlackPawns() & toBitboard) != 0) {
                 return true;
-            } else if ((blackKnights & toBitboard) != 0) {
+            } else if ((getBlackKnights() & toBitboard) != 0) {
                 return true;
-            } else if ((blackBishops & toBitboard) != 0) {
+            } else if ((getBlackBishops() & toBitboard) != 0) {
                 return true;
-            } else if ((blackRooks & toBitboard) != 0) {
+            } else if ((getBlackRooks() & toBitboard) != 0) {
                 return true;
-            } else if ((blackQueens & toBitboard) != 0) {
+            } else if ((getBlackQueens() & toBitboard) != 0) {
                 return true;
-            } else if ((blackKing & toBitboard) != 0) {
+            } else if ((getBlackKing() & toBitboard) != 0) {
                 return true;
             }
         } else {
-            if ((whitePawns & toBitboard) != 0) {
+            if ((getWhitePawns() & toBitboard) != 0) {
                 return true;
-            } else if ((whiteKnights & toBitboard) != 0) {
+            } else if ((getWhiteKnights() & toBitboard) != 0) {
                 return true;
-            } else if ((whiteBishops & toBitboard) != 0) {
+            } else if ((getWhiteBishops() & toBitboard) != 0) {
                 return true;
-            } else if ((whiteRooks & toBitboard) != 0) {
+            } else if ((getWhiteRooks() & toBitboard) != 0) {
                 return true;
-            } else if ((whiteQueens & toBitboard) != 0) {
+            } else if ((getWhiteQueens() & toBitboard) != 0) {
                 return true;
-            } else if ((whiteKing & toBitboard) != 0) {
+            } else if ((getWhiteKing() & toBitboard) != 0) {
                 return true;
             }
         }
@@ -2291,21 +2584,8 @@ public class Board {
         return (blackPieces & piece) != 0;
     }
 
-    private int getCastlingRights() {
-        int rights = 0;
-        if (whiteCastleKingSide != 0) {
-            rights |= 1; // Droit de roque du côté du roi
-        }
-        if (whiteCastleQueenSide != 0) {
-            rights |= 2; // Droit de roque du côté de la reine
-        }
-        if (blackCastleKingSide != 0) {
-            rights |= 4; // Droit de roque du côté du roi
-        }
-        if (blackCastleQueenSide != 0) {
-            rights |= 8; // Droit de roque du côté de la reine
-        }
-        return rights;
+    int getCastlingRights() {
+        return castlingRights;
     }
 
     @Override
@@ -2313,24 +2593,17 @@ public class Board {
         try {
             Board copy = (Board) super.clone();
 
-            copy.whitePawns = this.whitePawns;
-            copy.whiteKnights = this.whiteKnights;
-            copy.whiteBishops = this.whiteBishops;
-            copy.whiteRooks = this.whiteRooks;
-            copy.whiteQueens = this.whiteQueens;
-            copy.whiteKing = this.whiteKing;
-
-            copy.blackPawns = this.blackPawns;
-            copy.blackKnights = this.blackKnights;
-            copy.blackBishops = this.blackBishops;
-            copy.blackRooks = this.blackRooks;
-            copy.blackQueens = this.blackQueens;
-            copy.blackKing = this.blackKing;
-
-            copy.whiteCastleKingSide = this.whiteCastleKingSide;
-            copy.whiteCastleQueenSide = this.whiteCastleQueenSide;
-            copy.blackCastleKingSide = this.blackCastleKingSide;
-            copy.blackCastleQueenSide = this.blackCastleQueenSide;
+            copy.pawns = this.pawns;
+            copy.knights = this.knights;
+            copy.bishops = this.bishops;
+            copy.rooks = this.rooks;
+            copy.queens = this.queens;
+            copy.kings = this.kings;
+
+            copy.whitePieces = this.whitePieces;
+            copy.blackPieces = this.blackPieces;
+
+            copy.castlingRights = this.castlingRights;
 
             copy.enPassantSquare = this.enPassantSquare;
             copy.whiteTurn = this.whiteTurn;
@@ -2340,8 +2613,13 @@ public class Board {
             copy.phase = this.phase;
 
             copy.zobristKey = this.zobristKey;
+            copy.halfmoveClock = this.halfmoveClock;
+            copy.pawnKey = this.pawnKey;
+            copy.materialKey = this.materialKey;
 
-            copy.updateBitBoard();
+            copy.mailbox = this.mailbox.clone();
+            copy.attackInfo = new AttackInfo();
+            copy.fenBytes = new AsciiChars();
 
             return copy;
 
@@ -2353,28 +2631,17 @@ public class Board {
     public void copyFrom(Board other) {
         this.whiteTurn = other.whiteTurn;
 
-        this.whitePawns = other.whitePawns;
-        this.whiteKnights = other.whiteKnights;
-        this.whiteBishops = other.whiteBishops;
-        this.whiteRooks = other.whiteRooks;
-        this.whiteQueens = other.whiteQueens;
-        this.whiteKing = other.whiteKing;
-
-        this.blackPawns = other.blackPawns;
-        this.blackKnights = other.blackKnights;
-        this.blackBishops = other.blackBishops;
-        this.blackRooks = other.blackRooks;
-        this.blackQueens = other.blackQueens;
-        this.blackKing = other.blackKing;
+        this.pawns = other.pawns;
+        this.knights = other.knights;
+        this.bishops = other.bishops;
+        this.rooks = other.rooks;
+        this.queens = other.queens;
+        this.kings = other.kings;
 
         this.whitePieces = other.whitePieces;
         this.blackPieces = other.blackPieces;
-        this.bitboard = other.bitboard;
 
-        this.whiteCastleQueenSide = other.whiteCastleQueenSide;
-        this.whiteCastleKingSide = other.whiteCastleKingSide;
-        this.blackCastleQueenSide = other.blackCastleQueenSide;
-        this.blackCastleKingSide = other.blackCastleKingSide;
+        this.castlingRights = other.castlingRights;
 
         this.enPassantSquare = other.enPassantSquare;
 
@@ -2383,11 +2650,19 @@ public class Board {
         this.phase = other.phase;
 
         this.zobristKey = other.zobristKey;
+        this.pawnKey = other.pawnKey;
+        this.materialKey = other.materialKey;
+
+        this.plyCount = other.plyCount;
+        this.halfmoveClock = other.halfmoveClock;
+        System.arraycopy(other.mailbox, 0, this.mailbox, 0, 64);
+        this.attackInfo.invalidate();
+        this.history.copyFrom(other.history);
     }
 
     // return if the side to mvoe has any non pawn material
     public boolean hasNonPawnMaterial() {
-        return (whiteTurn ? (whiteKnights | whiteBishops | whiteRooks | whiteQueens) : (blackKnights | blackBishops | blackRooks | blackQueens)) != 0;
+        return ((knights | bishops | rooks | queens) & (whiteTurn ? whitePieces : blackPieces)) != 0;
     }
 
 }
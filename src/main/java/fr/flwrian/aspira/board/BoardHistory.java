@@ -1,77 +1,63 @@
 package fr.flwrian.aspira.board;
 
+/**
+ * Undo record of one move: only what makeMove cannot recompute backwards.
+ * Pieces are moved back by Board.undoMove from the move itself and the captured piece,
+ * everything else (castling rights, en passant, halfmove clock, keys, eval) is restored as is.
+ */
 public class BoardHistory {
-    public long bitboard;
     public int move;
-    public long whitePawns, whiteKnights, whiteBishops, whiteRooks, whiteQueens, whiteKing;
-    public long blackPawns, blackKnights, blackBishops, blackRooks, blackQueens, blackKing;
-    public long whiteCastleQueenSide, whiteCastleKingSide, blackCastleQueenSide, blackCastleKingSide;
+    public int captured;        // piece type taken by the move, Board.EMPTY if none
+    public int castlingRights;  // 4 bits, same layout as the Zobrist castling index
     public long enPassantSquare;
-    public boolean whiteTurn;
+    public int halfmoveClock;
     public int evalMG, evalEG, phase;
     public long zobristKey;
+    public long pawnKey, materialKey;
+
+    // attack info of the position before the move, swapped with the board's by make and unmake
+    AttackInfo attackInfo = new AttackInfo();
 
     public void copyFrom(Board b, int move) {
         this.move = move;
-        this.bitboard = b.bitboard;
-
-        this.whitePawns = b.whitePawns;
-        this.whiteKnights = b.whiteKnights;
-        this.whiteBishops = b.whiteBishops;
-        this.whiteRooks = b.whiteRooks;
-        this.whiteQueens = b.whiteQueens;
-        this.whiteKing = b.whiteKing;
-
-        this.blackPawns = b.blackPawns;
-        this.blackKnights = b.blackKnights;
-        this.blackBishops = b.blackBishops;
-        this.blackRooks = b.blackRooks;
-        this.blackQueens = b.blackQueens;
-        this.blackKing = b.blackKing;
-
-        this.whiteCastleQueenSide = b.whiteCastleQueenSide;
-        this.whiteCastleKingSide = b.whiteCastleKingSide;
-        this.blackCastleQueenSide = b.blackCastleQueenSide;
-        this.blackCastleKingSide = b.blackCastleKingSide;
-
+        this.captured = Board.EMPTY;
+        this.castlingRights = b.castlingRights;
         this.enPassantSquare = b.enPassantSquare;
-        this.whiteTurn = b.whiteTurn;
+        this.halfmoveClock = b.halfmoveClock;
         this.evalMG = b.currentEvalMG;
         this.evalEG = b.currentEvalEG;
         this.phase = b.phase;
         this.zobristKey = b.zobristKey;
+        this.pawnKey = b.pawnKey;
+        this.materialKey = b.materialKey;
     }
 
-    public void restoreTo(Board b) {
-        b.bitboard = this.bitboard;
-
-        b.whitePawns = this.whitePawns;
-        b.whiteKnights = this.whiteKnights;
-        b.whiteBishops = this.whiteBishops;
-        b.whiteRooks = this.whiteRooks;
-        b.whiteQueens = this.whiteQueens;
-        b.whiteKing = this.whiteKing;
-
-        b.blackPawns = this.blackPawns;
-        b.blackKnights = this.blackKnights;
-        b.blackBishops = this.blackBishops;
-        b.blackRooks = this.blackRooks;
-        b.blackQueens = this.blackQueens;
-        b.blackKing = this.blackKing;
-
-        b.whiteCastleQueenSide = this.whiteCastleQueenSide;
-        b.whiteCastleKingSide = this.whiteCastleKingSide;
-        b.blackCastleQueenSide = this.blackCastleQueenSide;
-        b.blackCastleKingSide = this.blackCastleKingSide;
+    public void copyFrom(BoardHistory other) {
+        this.move = other.move;
+        this.captured = other.captured;
+        this.castlingRights = other.castlingRights;
+        this.enPassantSquare = other.enPassantSquare;
+        this.halfmoveClock = other.halfmoveClock;
+        this.evalMG = other.evalMG;
+        this.evalEG = other.evalEG;
+        this.phase = other.phase;
+        this.zobristKey = other.zobristKey;
+        this.pawnKey = other.pawnKey;
+        this.materialKey = other.materialKey;
+        // the attack info stays with its board
+        this.attackInfo.invalidate();
+    }
 
+    // Restore the saved state; the pieces are handled by Board.undoMove
+    public void restoreTo(Board b) {
+        b.castlingRights = this.castlingRights;
         b.enPassantSquare = this.enPassantSquare;
-        b.whiteTurn = this.whiteTurn;
+        b.halfmoveClock = this.halfmoveClock;
         b.currentEvalMG = this.evalMG;
         b.currentEvalEG = this.evalEG;
         b.phase = this.phase;
         b.zobristKey = this.zobristKey;
-
-        b.whitePieces = b.whitePawns | b.whiteKnights | b.whiteBishops | b.whiteRooks | b.whiteQueens | b.whiteKing;
-        b.blackPieces = b.blackPawns | b.blackKnights | b.blackBishops | b.blackRooks | b.blackQueens | b.blackKing;
+        b.pawnKey = this.pawnKey;
+        b.materialKey = this.materialKey;
     }
 }
@@ -13,12 +13,13 @@ public class BoardHistoryStack {
         }
     }
 
-    public void push(Board board, int move) {
+    public BoardHistory push(Board board, int move) {
         if (top + 1 >= stack.length) {
             throw new RuntimeException("BoardHistoryStack overflow");
         }
         top++;
         stack[top].copyFrom(board, move);
+        return stack[top];
     }
 
     public BoardHistory pop() {
@@ -28,6 +29,17 @@ public class BoardHistoryStack {
         return stack[top--];
     }
 
+    // Copy the used part of another stack (search threads need the game history for repetitions)
+    public void copyFrom(BoardHistoryStack other) {
+        if (other.top >= stack.length) {
+            throw new RuntimeException("BoardHistoryStack overflow");
+        }
+        for (int i = 0; i <= other.top; i++) {
+            stack[i].copyFrom(other.stack[i]);
+        }
+        top = other.top;
+    }
+
     public void clear() {
         top = -1;
     }
@@ -0,0 +1,100 @@
+package fr.flwrian.aspira.hash;
+
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+
+/**
+ * Cuckoo tables of every reversible move (a non-pawn piece going from one square to another it attacks
+ * on an empty board), indexed by the Zobrist difference that move makes, side to move included.
+ * Two positions whose keys differ by one of these are one move apart, which lets the search see
+ * a repetition coming before the move is played (Board.hasUpcomingRepetition).
+ *
+ * Built once at class load from Zobrist.PIECE_KEYS, 3668 moves in 8192 slots.
+ */
+public final class Cuckoo {
+
+    public static final int SIZE = 8192;
+
+    static final long[] KEYS = new long[SIZE];
+    static final int[] MOVES = new int[SIZE];   // (square1 << 6) | square2, square1 < square2, 0 if empty
+
+    static int count;
+
+    private Cuckoo() {}
+
+    static {
+        for (int color = 0; color < 2; color++) {
+            for (int type = Board.KNIGHT; type <= Board.KING; type++) {
+                for (int s1 = 0; s1 < 64; s1++) {
+                    long attacks = emptyBoardAttacks(type, s1);
+                    for (int s2 = s1 + 1; s2 < 64; s2++) {
+                        if ((attacks & (1L << s2)) != 0L) {
+                            insert(Zobrist.PIECE_KEYS[color][type][s1] ^ Zobrist.PIECE_KEYS[color][type][s2]
+                                    ^ Zobrist.SIDE_TO_MOVE_KEY, (s1 << 6) | s2);
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static long emptyBoardAttacks(int type, int square) {
+        switch (type) {
+            case Board.KNIGHT:
+                return Board.KNIGHT_ATTACKS[square];
+            case Board.BISHOP:
+                return MoveGenerator.generateBishopAttacks(square, 0L);
+            case Board.ROOK:
+                return MoveGenerator.generateRookAttacks(square, 0L);
+            case Board.QUEEN:
+                return MoveGenerator.generateBishopAttacks(square, 0L) | MoveGenerator.generateRookAttacks(square, 0L);
+            default:
+                return Board.KING_ATTACKS[square];
+        }
+    }
+
+    // Cuckoo insertion: take the slot, move whatever was there to its other slot, until an empty one is found
+    private static void insert(long key, int move) {
+        int i = h1(key);
+        while (true) {
+            long k = KEYS[i];
+            KEYS[i] = key;
+            key = k;
+            int m = MOVES[i];
+            MOVES[i] = move;
+            move = m;
+
+            if (move == 0) {
+                return;
+            }
+            i = i == h1(key) ? h2(key) : h1(key);
+        }
+    }
+
+    static int h1(long key) {
+        return (int) key & (SIZE - 1);
+    }
+
+    static int h2(long key) {
+        return (int) (key >>> 16) & (SIZE - 1);
+    }
+
+    /** The move (square1 << 6 | square2) whose key difference is moveKey, 0 if there is none. */
+    public static int find(long moveKey) {
+        int i = h1(moveKey);
+        if (KEYS[i] == moveKey) {
+            return MOVES[i];
+        }
+        i = h2(moveKey);
+        if (KEYS[i] == moveKey) {
+            return MOVES[i];
+        }
+        return 0;
+    }
+
+    /** Number of moves in the tables. */
+    public static int size() {
+        return count;
+    }
+}
@@ -0,0 +1,153 @@
+package fr.flwrian.aspira.hash;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Off-heap long array made of direct buffer chunks (32 MB each).
+ * Not limited to 2^31 elements like a long[], and the GC only sees the chunk headers.
+ * Every chunk starts on a cache line, so a 64-byte TT bucket is exactly one line.
+ *
+ * Chunks are allocated (and zeroed by the JVM) in parallel, one task per chunk, and
+ * clear() zeroes them in parallel too: a big Hash is ready in a fraction of the single-threaded time.
+ * Direct memory is capped by -XX:MaxDirectMemorySize (defaults to the max heap size).
+ */
+final class OffHeapLongArray {
+
+    static final int CHUNK_SHIFT = 22; // 2^22 longs = 32 MB, small enough to keep every core busy
+    static final int CHUNK_SIZE  = 1 << CHUNK_SHIFT;
+    static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int CACHE_LINE = 64;
+    private static final long[] ZEROS = new long[8192];
+
+    private final LongBuffer[] chunks;
+    private final long length;
+
+    OffHeapLongArray(long length) {
+        if (length <= 0) throw new IllegalArgumentException("Length must be positive");
+
+        this.length = length;
+        this.chunks = new LongBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+
+        runParallel(chunks.length, c -> chunks[c] = allocateChunk(chunkLength(c)));
+    }
+
+    private OffHeapLongArray(LongBuffer[] chunks, long length) {
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    /**
+     * Map length longs of a file, starting at offset, copy-on-write: pages are read from the file
+     * when first touched and writes stay in memory, the file is never modified.
+     * offset must be a multiple of 64 to keep buckets on cache lines.
+     */
+    static OffHeapLongArray mapPrivate(FileChannel channel, long offset, long length) throws IOException {
+        LongBuffer[] chunks = new LongBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+        for (int c = 0; c < chunks.length; c++) {
+            long longs = Math.min(CHUNK_SIZE, length - ((long) c << CHUNK_SHIFT));
+            chunks[c] = channel.map(MapMode.PRIVATE, offset + ((long) c << CHUNK_SHIFT) * Long.BYTES, longs * Long.BYTES)
+                    .order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+        return new OffHeapLongArray(chunks, length);
+    }
+
+    /** Copy the whole array into a file, starting at offset, one mapping and one bulk copy per chunk. */
+    void writeTo(FileChannel channel, long offset) throws IOException {
+        try {
+            runParallel(chunks.length, c -> {
+                try {
+                    LongBuffer chunk = chunks[c];
+                    channel.map(MapMode.READ_WRITE, offset + ((long) c << CHUNK_SHIFT) * Long.BYTES, (long) chunk.capacity() * Long.BYTES)
+                            .order(ByteOrder.nativeOrder()).asLongBuffer()
+                            .put(chunk.duplicate().clear());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    long get(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+    }
+
+    void set(long index, long value) {
+        chunks[(int) (index >>> CHUNK_SHIFT)].put((int) (index & CHUNK_MASK), value);
+    }
+
+    long length() {
+        return length;
+    }
+
+    /** Set every element to 0, one task per chunk. */
+    void clear() {
+        runParallel(chunks.length, c -> {
+            LongBuffer chunk = chunks[c];
+            int size = chunk.capacity();
+            for (int i = 0; i < size; i += ZEROS.length) {
+                chunk.put(i, ZEROS, 0, Math.min(ZEROS.length, size - i));
+            }
+        });
+    }
+
+    // --- Helpers ---
+
+    private int chunkLength(int chunk) {
+        return (int) Math.min(CHUNK_SIZE, length - ((long) chunk << CHUNK_SHIFT));
+    }
+
+    private static LongBuffer allocateChunk(int longs) {
+        // allocateDirect zeroes the memory; over-allocate one line to align the start
+        ByteBuffer raw = ByteBuffer.allocateDirect(longs * Long.BYTES + CACHE_LINE);
+        return raw.alignedSlice(CACHE_LINE).order(ByteOrder.nativeOrder()).asLongBuffer().limit(longs).slice();
+    }
+
+    /** Run task(0..tasks-1) on all available cores and wait for all of them. */
+    static void runParallel(int tasks, IntConsumer task) {
+        int threads = Math.min(tasks, Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            for (int i = 0; i < tasks; i++) {
+                task.accept(i);
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks);
+            for (int i = 0; i < tasks; i++) {
+                final int t = i;
+                futures.add(executor.submit(() -> task.accept(t)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing the transposition table", e);
+        } catch (ExecutionException e) {
+            // keep OutOfMemoryError and the task's own exceptions visible to the caller
+            if (e.getCause() instanceof Error error) throw error;
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
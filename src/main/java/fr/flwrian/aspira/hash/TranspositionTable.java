@@ -1,8 +1,20 @@
 package fr.flwrian.aspira.hash;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import fr.flwrian.aspira.move.PackedMove;
+
 /**
- * Transposition Table – 4-way set-associative, depth-preferred replacement.
- * Memory is respected (primitive arrays; no per-entry objects).
+ * Transposition Table – 8-way set-associative (64-byte buckets), depth-preferred replacement.
+ * Memory is respected (off-heap, 8 bytes per entry; no per-entry objects).
+ * Lock-free: every entry is a single long, so it is safe to share between search threads.
  *
  * NOTE: Values must already be encoded/decoded for mate distance (toTTScore/fromTTScore) in the caller.
  */
@@ -15,7 +27,7 @@ public class TranspositionTable {
         public static final int UPPERBOUND = 2;
 
         public final long key;      // full Zobrist (for safety)
-        public final int bestMove; // packed move
+        public final int bestMove; // compact move (from/to/promotion)
         public final int  value;    // already encoded for TT by caller
         public final int  depth;    // search depth stored
         public final int  flag;     // EXACT / LOWERBOUND / UPPERBOUND
@@ -29,18 +41,42 @@ public class TranspositionTable {
         }
     }
 
-    // ---- Layout: 4 entries per bucket
-    private static final int WAYS = 4;
-    private final int buckets;      // number of buckets (power of two)
-    private final int bucketMask;   // buckets - 1
+    // ---- Layout: 8 entries per bucket, 1 long per entry -> one bucket = 64 bytes (a cache line)
+    //
+    // entry: move (16) | value (16) | depth (8) | bound (2) | generation (6) | key (16)
+    //
+    // move  = from/to/promotion only (PackedMove.toCompact), the caller finds the full move in its move list
+    // bound = flag + 1, so 0 means empty slot
+    // generation = search counter when the entry was written (wraps at 64)
+    // key   = top 16 bits of the Zobrist key XOR keySalt, the low bits already select the bucket
+    //
+    // An entry is a single long, so a concurrent write can never be seen half done.
+    private static final int WAYS = 8;
+    private static final int WAYS_SHIFT = 3;
+    private final long buckets;     // number of buckets (power of two)
+    private final long bucketMask;  // buckets - 1
+
+    // Off-heap, so the table can go past the 2^31 entries of a long[] (16 GB)
+    private final OffHeapLongArray table;
+
+    private static final int VALUE_SHIFT = 16;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int GEN_SHIFT   = 42;
+    private static final int KEY_SHIFT   = 48;
+    private static final long BOUND_MASK = 0x3L << BOUND_SHIFT;
 
-    // Parallel primitive arrays (size = buckets * WAYS)
-    private final long[] keys;
-    private final int[] moves;
-    private final int[]  values;
-    private final short[] depths;   // depth <= ~32767
-    private final byte[]  flags;    // 0..2
-    private final byte[]  used;     // 0=empty, 1=used (tiny occupancy marker)
+    private static final int GEN_MASK = 0x3F;
+    // An entry loses this much depth per search it has not been written in
+    private static final int AGE_WEIGHT = 8;
+
+    private int generation = 0;
+    // Entries older than this many searches count as empty slots (see clearLazily), GEN_MASK + 1 = all alive
+    private int liveGenerations = GEN_MASK + 1;
+    // XORed into the stored key bits, changed by clearLazily (16 bits)
+    private int keySalt = 0;
+
+    private static final int HASHFULL_SAMPLE = 1000;
 
     /**
      * @param sizeMB target memory in MB (best-effort). Actual usage will be <= sizeMB.
@@ -48,118 +84,255 @@ public class TranspositionTable {
     public TranspositionTable(int sizeMB) {
         if (sizeMB < 1) throw new IllegalArgumentException("Size must be at least 1 MB");
 
-        // Rough entry footprint (primitive arrays only):
-        // key(8) + move(4) + value(4) + depth(2) + flag(1) + used(1) ~= 20 bytes/entry
-        final int ENTRY_BYTES = 20;
+        // 8 bytes/entry, 64 bytes/bucket
+        final int ENTRY_BYTES = 8;
 
         long bytes = (long) sizeMB * 1024L * 1024L;
         long maxEntries = Math.max(256, bytes / ENTRY_BYTES); // avoid tiny tables
         long maxBuckets = Math.max(64, maxEntries / WAYS);
 
         // buckets = highest power of two <= maxBuckets
-        int b = highestPowerOfTwoLE(maxBuckets);
+        long b = highestPowerOfTwoLE(maxBuckets);
         this.buckets = Math.max(64, b);
         this.bucketMask = this.buckets - 1;
 
-        int capacity = this.buckets * WAYS;
+        this.table = new OffHeapLongArray(this.buckets * WAYS);
+    }
 
-        this.keys   = new long[capacity];
-        this.moves  = new int[capacity];
-        this.values = new int [capacity];
-        this.depths = new short[capacity];
-        this.flags  = new byte [capacity];
-        this.used   = new byte [capacity];
+    private TranspositionTable(OffHeapLongArray table, int generation, int keySalt) {
+        this.buckets = table.length() / WAYS;
+        this.bucketMask = this.buckets - 1;
+        this.table = table;
+        this.generation = generation;
+        this.keySalt = keySalt;
     }
 
     // --- Public API ---
 
-    /** Store (depth-preferred; always keeps deeper line). */
+    /** Call once per search (go), entries from older searches become cheaper to replace. */
+    public void newSearch() {
+        generation = (generation + 1) & GEN_MASK;
+        if (liveGenerations <= GEN_MASK) liveGenerations++;
+    }
+
+    /**
+     * Clear in O(1): the key salt changes, so the entries written so far no longer match their
+     * positions (only as often as an entry of another position does). They are also taken as empty
+     * slots by put while the 6-bit generation tells them apart; once it wraps they are replaced
+     * like any old entry.
+     */
+    public void clearLazily() {
+        generation = (generation + 1) & GEN_MASK;
+        liveGenerations = 0;
+        keySalt = (keySalt + 1) & 0xFFFF;
+    }
+
+    public int generation() { return generation; }
+
+    /** Store (depth-preferred, aged: an old deep entry loses to a new shallow one). */
     public void put(long zobristKey, int bestMove, int value, int depth, int flag) {
-        final int base = baseIndex(zobristKey);
+        final long base = baseIndex(zobristKey);
+        final long key16 = (zobristKey >>> KEY_SHIFT) ^ keySalt;
 
-        // 1) If key already present in bucket → replace if depth is >= existing (keep newer/deeper)
-        int emptySlot = -1;
-        int victim = base; // default victim = first way; will switch to the shallowest
-        int victimDepth = Integer.MAX_VALUE;
+        // 1) If key already present in bucket → replace if depth is >= existing or the entry is from an older search
+        long emptySlot = -1;
+        long victim = base; // default victim = first way; will switch to the lowest depth - AGE_WEIGHT * age
+        int victimWorth = Integer.MAX_VALUE;
 
         for (int w = 0; w < WAYS; w++) {
-            int idx = base + w;
+            long idx = base + w;
+            long data = table.get(idx);
+            boolean used = isLive(data);
 
-            if (used[idx] != 0 && keys[idx] == zobristKey) {
+            if (used && (data >>> KEY_SHIFT) == key16) {
                 // same key -> prefer deeper or at least not shallower
-                if ((depth & 0xFFFF) >= (depths[idx] & 0xFFFF)) {
-                    keys[idx]   = zobristKey;
-                    moves[idx]  = bestMove;
-                    values[idx] = value;
-                    depths[idx] = (short) depth;
-                    flags[idx]  = (byte) flag;
-                    used[idx]   = 1;
+                if (depth >= depth(data) || generation(data) != generation) {
+                    table.set(idx, pack(key16, bestMove, value, depth, flag, generation));
                 }
                 return;
             }
 
-            if (used[idx] == 0 && emptySlot < 0) emptySlot = idx;
+            if (!used && emptySlot < 0) emptySlot = idx;
 
-            int d = used[idx] == 0 ? -1 : (depths[idx] & 0xFFFF);
-            if (d >= 0 && d < victimDepth) {
-                victimDepth = d;
-                victim = idx;
+            if (used) {
+                int worth = depth(data) - AGE_WEIGHT * age(data);
+                if (worth < victimWorth) {
+                    victimWorth = worth;
+                    victim = idx;
+                }
             }
         }
 
         // 2) Free slot in bucket?
-        int target = (emptySlot >= 0) ? emptySlot : victim;
+        long target = (emptySlot >= 0) ? emptySlot : victim;
 
-        keys[target]   = zobristKey;
-        moves[target]  = bestMove;
-        values[target] = value;
-        depths[target] = (short) depth;
-        flags[target]  = (byte) flag;
-        used[target]   = 1;
+        table.set(target, pack(key16, bestMove, value, depth, flag, generation));
     }
 
-    /** Probe exact bucket (4 ways). Returns null if miss. */
-    public Entry get(long zobristKey) {
-        final int base = baseIndex(zobristKey);
+    /**
+     * Probe exact bucket (8 ways) without allocating.
+     * Returns the packed entry, decode it with {@link #move}, {@link #value}, {@link #depth} and {@link #flag}.
+     * Returns 0 if miss (check with {@link #isHit}).
+     */
+    public long probe(long zobristKey) {
+        final long base = baseIndex(zobristKey);
+        final long key16 = (zobristKey >>> KEY_SHIFT) ^ keySalt;
         for (int w = 0; w < WAYS; w++) {
-            int idx = base + w;
-            if (used[idx] != 0 && keys[idx] == zobristKey) {
-                return new Entry(keys[idx], moves[idx], values[idx], depths[idx] & 0xFFFF, flags[idx] & 0xFF);
+            long data = table.get(base + w);
+            if (isLive(data) && (data >>> KEY_SHIFT) == key16) {
+                return data;
+            }
+        }
+        return 0L;
+    }
+
+    /** Probe exact bucket (8 ways). Returns null if miss. Allocates, search code should use {@link #probe}. */
+    public Entry get(long zobristKey) {
+        long data = probe(zobristKey);
+        if (!isHit(data)) return null;
+        return new Entry(zobristKey, move(data), value(data), depth(data), flag(data));
+    }
+
+    // --- Packed entry decoders ---
+
+    public static boolean isHit(long data) { return (data & BOUND_MASK) != 0; }
+    /** Compact move (from/to/promotion), see {@link PackedMove#toCompact}. */
+    public static int move(long data)      { return (int) data & 0xFFFF; }
+    public static int value(long data)     { return (short) (data >>> VALUE_SHIFT); }
+    public static int depth(long data)     { return (int) (data >>> DEPTH_SHIFT) & 0xFF; }
+    public static int flag(long data)      { return ((int) (data >>> BOUND_SHIFT) & 0x3) - 1; }
+    public static int generation(long data) { return (int) (data >>> GEN_SHIFT) & GEN_MASK; }
+
+    private boolean isLive(long data) {
+        return isHit(data) && age(data) < liveGenerations;
+    }
+
+    /** Number of searches since the entry was written. */
+    private int age(long data) {
+        return (generation - generation(data)) & GEN_MASK;
+    }
+
+    // ---- Save / load
+    //
+    // File = 64-byte header (big endian) followed by the raw entries (native order, see BYTE_ORDER):
+    //
+    //  0  magic "ASPIRATT"      8  format version     12  entries byte order (1 = little, 2 = big endian)
+    // 16  Zobrist fingerprint  24  number of entries  32  generation          36  key salt   40..63  zero
+    //
+    // A file from another format, byte order or set of Zobrist keys describes other positions and is rejected.
+    private static final long FILE_MAGIC = 0x4153504952415454L; // "ASPIRATT"
+    private static final int FILE_VERSION = 2;
+    private static final int FILE_HEADER_BYTES = 64;
+    private static final int BYTE_ORDER = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 2;
+
+    /**
+     * Write the raw table to a file. Only call it while no search is running.
+     * The table is written to a temporary file next to it, then moved over it: the file may be the one
+     * a loaded table is mapped from, and truncating it in place would empty the entries being saved.
+     */
+    public void save(Path file) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+                header.putLong(FILE_MAGIC)
+                        .putInt(FILE_VERSION)
+                        .putInt(BYTE_ORDER)
+                        .putLong(Zobrist.fingerprint())
+                        .putLong(capacity())
+                        .putInt(generation)
+                        .putInt(keySalt)
+                        .clear();
+                channel.write(header, 0);
+
+                table.writeTo(channel, FILE_HEADER_BYTES);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Map a table written by {@link #save} back into memory. The entries are mapped copy-on-write,
+     * so the load itself does not read the file and later writes never touch it.
+     *
+     * @throws IOException if the file can't be read or was not written by this version with the same Zobrist keys
+     */
+    public static TranspositionTable load(Path file) throws IOException {
+        // copy-on-write mappings need a channel open for writing, even though nothing is written
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            if (channel.read(header, 0) != FILE_HEADER_BYTES) {
+                throw new IOException("Not a hash file: too short");
+            }
+            header.flip();
+
+            if (header.getLong() != FILE_MAGIC) throw new IOException("Not a hash file: bad magic");
+            int version = header.getInt();
+            if (version != FILE_VERSION) throw new IOException("Unsupported hash file version " + version + " (expected " + FILE_VERSION + ")");
+            if (header.getInt() != BYTE_ORDER) throw new IOException("Hash file was written with another byte order");
+            if (header.getLong() != Zobrist.fingerprint()) throw new IOException("Hash file was written with other Zobrist keys");
+
+            long entries = header.getLong();
+            int generation = header.getInt();
+            int keySalt = header.getInt();
+            if (entries < 64 * WAYS || Long.bitCount(entries) != 1 || generation < 0 || generation > GEN_MASK
+                    || keySalt < 0 || keySalt > 0xFFFF) {
+                throw new IOException("Corrupted hash file header");
+            }
+            if (channel.size() != FILE_HEADER_BYTES + entries * Long.BYTES) {
+                throw new IOException("Hash file size does not match its header");
             }
+
+            // the mapping stays valid after the channel is closed
+            return new TranspositionTable(OffHeapLongArray.mapPrivate(channel, FILE_HEADER_BYTES, entries), generation, keySalt);
         }
-        return null;
     }
 
     // --- Helpers ---
 
-    private int baseIndex(long key) {
+    private static long pack(long key16, int bestMove, int value, int depth, int flag, int generation) {
+        return (PackedMove.toCompact(bestMove) & 0xFFFFL)
+                | ((long) (value & 0xFFFF) << VALUE_SHIFT)
+                | ((long) Math.min(Math.max(depth, 0), 255) << DEPTH_SHIFT)
+                | ((long) ((flag & 0x3) + 1) << BOUND_SHIFT)
+                | ((long) (generation & GEN_MASK) << GEN_SHIFT)
+                | (key16 << KEY_SHIFT);
+    }
+
+    private long baseIndex(long key) {
         // bucket * WAYS
-        int bucket = (int) key & bucketMask;
-        return (bucket << 2); // *4 (WAYS)
+        long bucket = key & bucketMask;
+        return (bucket << WAYS_SHIFT);
     }
 
-    private static int highestPowerOfTwoLE(long x) {
+    private static long highestPowerOfTwoLE(long x) {
         if (x <= 1) return 1;
-        int p = 1;
-        while ((long) (p << 1) <= x && (p << 1) > 0) p <<= 1;
-        return p;
+        return Long.highestOneBit(x);
     }
 
     // Optional: for quick stats
-    public int capacity() { return buckets * WAYS; }
-    public int buckets()  { return buckets; }
-    /** Returns the current hash table occupancy permill */
+    public long capacity() { return buckets * WAYS; }
+    public long buckets()  { return buckets; }
+    /**
+     * Returns the current hash table occupancy permill.
+     * Like other engines, only samples the first 1000 entries and counts those written by the
+     * current search, so the cost does not grow with the table size.
+     */
     public int hashfull() {
+        long sample = Math.min(HASHFULL_SAMPLE, capacity());
         int usedSlots = 0;
-        for (int i = 0; i < keys.length; i++) {
-            if (used[i] != 0) usedSlots++;
+        for (long i = 0; i < sample; i++) {
+            long data = table.get(i);
+            if (isHit(data) && generation(data) == generation) usedSlots++;
         }
-        return (int) ((usedSlots * 1000L) / capacity());
+        return (int) ((usedSlots * 1000L) / sample);
     }
 
+    /** Zero the whole table (in parallel). */
     public void flush() {
-        for (int i = 0; i < used.length; i++) {
-            used[i] = 0;
-        }
+        table.clear();
+        liveGenerations = GEN_MASK + 1;
     }
 }
@@ -8,6 +8,9 @@ public class Zobrist {
     public static final long[] EN_PASSANT_KEYS = new long[64];   // squares
     public static final long SIDE_TO_MOVE_KEY;
 
+    // material key of n pieces of a kind (Board.materialKey): the first n PIECE_KEYS of that kind XORed together
+    public static final long[][][] MATERIAL_KEYS = new long[2][6][65];
+
     static {
         Random rand = new Random(20255); // seed fixe = déterministe pour debug
         for (int color = 0; color < 2; color++) {
@@ -27,5 +30,32 @@ public class Zobrist {
         }
 
         SIDE_TO_MOVE_KEY = rand.nextLong();
+
+        for (int color = 0; color < 2; color++) {
+            for (int pieceType = 0; pieceType < 6; pieceType++) {
+                for (int n = 1; n <= 64; n++) {
+                    MATERIAL_KEYS[color][pieceType][n] = MATERIAL_KEYS[color][pieceType][n - 1] ^ PIECE_KEYS[color][pieceType][n - 1];
+                }
+            }
+        }
+    }
+
+    /** Mix of every key. Changes with the seed or the key layout, so saved hash tables can be checked against it. */
+    public static long fingerprint() {
+        long h = 0;
+        for (long[][] color : PIECE_KEYS) {
+            for (long[] pieceType : color) {
+                for (long key : pieceType) {
+                    h = h * 0x9E3779B97F4A7C15L + key;
+                }
+            }
+        }
+        for (long key : CASTLING_KEYS) {
+            h = h * 0x9E3779B97F4A7C15L + key;
+        }
+        for (long key : EN_PASSANT_KEYS) {
+            h = h * 0x9E3779B97F4A7C15L + key;
+        }
+        return h * 0x9E3779B97F4A7C15L + SIDE_TO_MOVE_KEY;
     }
 }
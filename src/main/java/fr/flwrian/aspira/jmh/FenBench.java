@@ -0,0 +1,120 @@
+package fr.flwrian.aspira.jmh;
+
+import fr.flwrian.aspira.bench.BenchPositions;
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FEN loading and writing, one position per call. The byte[] paths read and write one shared buffer,
+ * like a tool streaming an EPD file. Run with the gc profiler to check they do not allocate:
+ * java -jar target/benchmarks.jar FenBench -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class FenBench {
+
+    // "bench": BenchPositions.POSITIONS, "epd": the FEN part of every line of perft-suite/standard.epd
+    @Param({"bench", "epd"})
+    String positions;
+
+    String[] fens;
+    byte[] text;        // every FEN, one after the other
+    int[] starts;
+    int[] ends;
+    Board[] boards;     // the positions, already loaded, for the writers
+    Board board;
+    byte[] out;
+    int index;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        MoveGenerator.initSlidingAttacks();
+
+        if (positions.equals("bench")) {
+            fens = BenchPositions.POSITIONS;
+        } else {
+            List<String> lines = new ArrayList<>();
+            for (String line : Files.readAllLines(Path.of("perft-suite/standard.epd"))) {
+                lines.add(line.split(";")[0].trim());
+            }
+            fens = lines.toArray(new String[0]);
+        }
+
+        int n = fens.length;
+        text = String.join("\n", fens).getBytes(StandardCharsets.US_ASCII);
+        starts = new int[n];
+        ends = new int[n];
+        boards = new Board[n];
+        for (int i = 0, offset = 0; i < n; i++) {
+            starts[i] = offset;
+            ends[i] = offset + fens[i].length();
+            offset = ends[i] + 1;
+
+            boards[i] = new Board();
+            boards[i].loadFromFen(fens[i]);
+        }
+
+        board = new Board();
+        out = new byte[Board.MAX_FEN_LENGTH * n];
+        index = 0;
+    }
+
+    /* ================================
+       LOAD
+       ================================ */
+
+    @Benchmark
+    public long loadFromString() {
+        board.loadFromFen(fens[index++ % fens.length]);
+        return board.zobristKey;
+    }
+
+    @Benchmark
+    public long loadFromBytes() {
+        int i = index++ % fens.length;
+        board.loadFromFen(text, starts[i], ends[i]);
+        return board.zobristKey;
+    }
+
+    /* ================================
+       WRITE
+       ================================ */
+
+    @Benchmark
+    public String getFen() {
+        return boards[index++ % boards.length].getFen();
+    }
+
+    @Benchmark
+    public int writeFen() {
+        int i = index++ % boards.length;
+        return boards[i].writeFen(out, i * Board.MAX_FEN_LENGTH);
+    }
+
+    /* ================================
+       ROUND TRIP : write then load back, no allocation
+       ================================ */
+
+    @Benchmark
+    public void writeThenLoad(Blackhole bh) {
+        int i = index++ % boards.length;
+        int start = i * Board.MAX_FEN_LENGTH;
+        int end = boards[i].writeFen(out, start);
+        board.loadFromFen(out, start, end);
+        bh.consume(board.zobristKey);
+    }
+}
@@ -0,0 +1,41 @@
+package fr.flwrian.aspira.jmh;
+
+import fr.flwrian.aspira.hash.TranspositionTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of hashfull(), called once per info line. It should not depend on the Hash size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=4g")
+@State(Scope.Thread)
+public class HashfullBench {
+
+    @Param({"16", "256", "1024"})
+    int sizeMB;
+
+    TranspositionTable tt;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tt = new TranspositionTable(sizeMB);
+
+        // fill about half of the table
+        Random random = new Random(20255);
+        long entries = tt.capacity() / 2;
+        for (long i = 0; i < entries; i++) {
+            tt.put(random.nextLong(), 0, 0, (int) (i & 0x3F), TranspositionTable.Entry.EXACT);
+        }
+    }
+
+    @Benchmark
+    public int hashfull() {
+        return tt.hashfull();
+    }
+}
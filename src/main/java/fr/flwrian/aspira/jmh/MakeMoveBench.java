@@ -30,6 +30,7 @@ public class MakeMoveBench {
     Board[] boards;
     PackedMoveList[] moveLists;
     PackedMoveList[] tempLists; // Pour les benchmarks qui ont besoin de listes temporaires
+    Board scratch; // cible des copies (une copie par thread de recherche)
     int index;
 
     /* ================================
@@ -64,6 +65,7 @@ public class MakeMoveBench {
             boards[i] = b;
         }
 
+        scratch = new Board();
         index = 0;
     }
 
@@ -129,4 +131,26 @@ public class MakeMoveBench {
         // Empêche DCE
         bh.consume(moves.size());
     }
+
+    /* ================================
+       GÉNÉRATION SEULE (positions déjà chargées)
+       ================================ */
+
+    @Benchmark
+    public void generateLegalMovesOnly(Blackhole bh) {
+        PackedMoveList moves = boards[index++ % boards.length].getLegalMoves(tempLists[2]);
+        bh.consume(moves.size());
+    }
+
+    @Benchmark
+    public void generateCaptureMovesOnly(Blackhole bh) {
+        PackedMoveList moves = boards[index++ % boards.length].getCaptureMoves(tempLists[3]);
+        bh.consume(moves.size());
+    }
+
+    @Benchmark
+    public void copyBoard(Blackhole bh) {
+        scratch.copyFrom(boards[index++ % boards.length]);
+        bh.consume(scratch.zobristKey);
+    }
 }
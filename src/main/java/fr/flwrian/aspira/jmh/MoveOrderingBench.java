@@ -0,0 +1,120 @@
+package fr.flwrian.aspira.jmh;
+
+import fr.flwrian.aspira.bench.BenchPositions;
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+import fr.flwrian.aspira.move.PackedMove;
+import fr.flwrian.aspira.move.PackedMoveList;
+import fr.flwrian.aspira.search.Search;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordering cost of one node: the legal moves of a bench position are ordered
+ * (captures by MVV-LVA, then quiets by history) and the first `tried` moves are taken.
+ * tried = 1 is a cut node on the first move, 218 an all node.
+ *
+ * insertionSort is the old way (full sort, score recomputed at every comparison),
+ * pickNext scores every move once and only selects what is taken.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveOrderingBench {
+
+    static final int CAPTURE_BONUS = 1_000_000;
+
+    @Param({"1", "3", "218"})
+    int tried;
+
+    PackedMoveList[] positions;
+    PackedMoveList work;
+    int[][] history;
+    int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MoveGenerator.initSlidingAttacks();
+
+        String[] fens = BenchPositions.POSITIONS;
+        positions = new PackedMoveList[fens.length];
+        for (int i = 0; i < fens.length; i++) {
+            Board b = new Board();
+            b.loadFromFen(fens[i]);
+            positions[i] = MoveGenerator.generateLegalMoves(b, new PackedMoveList(218));
+        }
+
+        // history values like a search in progress would have
+        Random random = new Random(20255);
+        history = new int[64][64];
+        for (int from = 0; from < 64; from++) {
+            for (int to = 0; to < 64; to++) {
+                history[from][to] = random.nextInt(4096);
+            }
+        }
+
+        work = new PackedMoveList(218);
+        index = 0;
+    }
+
+    private int score(int move) {
+        if (PackedMove.isCapture(move)) {
+            return CAPTURE_BONUS + Search.mvvLva[PackedMove.getCaptured(move)][PackedMove.getPieceFrom(move)];
+        }
+        return history[PackedMove.getFrom(move)][PackedMove.getTo(move)];
+    }
+
+    private PackedMoveList nextPosition() {
+        PackedMoveList source = positions[index++ % positions.length];
+        work.clear();
+        for (int i = 0; i < source.size(); i++) {
+            work.add(source.get(i));
+        }
+        return work;
+    }
+
+    @Benchmark
+    public void insertionSort(Blackhole bh) {
+        PackedMoveList moves = nextPosition();
+        int[] m = moves.moves;
+        int size = moves.size();
+
+        for (int i = 1; i < size; i++) {
+            int move = m[i];
+            int score = score(move);
+            int j = i - 1;
+
+            while (j >= 0 && score(m[j]) < score) {
+                m[j + 1] = m[j];
+                j--;
+            }
+            m[j + 1] = move;
+        }
+
+        int n = Math.min(tried, size);
+        for (int i = 0; i < n; i++) {
+            bh.consume(m[i]);
+        }
+    }
+
+    @Benchmark
+    public void pickNext(Blackhole bh) {
+        PackedMoveList moves = nextPosition();
+        int[] m = moves.moves;
+
+        for (int i = 0; i < moves.size(); i++) {
+            moves.setScore(i, score(m[i]));
+        }
+
+        int move;
+        for (int i = 0; i < tried && (move = moves.pickNext()) != 0; i++) {
+            bh.consume(move);
+        }
+    }
+}
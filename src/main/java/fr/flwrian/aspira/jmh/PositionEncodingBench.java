@@ -0,0 +1,86 @@
+package fr.flwrian.aspira.jmh;
+
+import fr.flwrian.aspira.bench.BenchPositions;
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary encoding (Board.encode / Board.decode, 32 bytes) against the FEN path on the same positions.
+ * Both sides read and write a reusable buffer, so only the format is compared.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class PositionEncodingBench {
+
+    static final String[] FENS = BenchPositions.POSITIONS;
+
+    Board[] boards;
+    Board board;
+    ByteBuffer encoded;     // every position, ENCODED_SIZE bytes each
+    byte[] fens;            // every position, MAX_FEN_LENGTH bytes each
+    int[] fenEnds;
+    int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MoveGenerator.initSlidingAttacks();
+
+        int n = FENS.length;
+        boards = new Board[n];
+        encoded = ByteBuffer.allocate(n * Board.ENCODED_SIZE);
+        fens = new byte[n * Board.MAX_FEN_LENGTH];
+        fenEnds = new int[n];
+        for (int i = 0; i < n; i++) {
+            boards[i] = new Board();
+            boards[i].loadFromFen(FENS[i]);
+            boards[i].encode(encoded.position(i * Board.ENCODED_SIZE));
+            fenEnds[i] = boards[i].writeFen(fens, i * Board.MAX_FEN_LENGTH);
+        }
+
+        board = new Board();
+        index = 0;
+    }
+
+    /* ================================
+       BINARY
+       ================================ */
+
+    @Benchmark
+    public ByteBuffer encode() {
+        int i = index++ % boards.length;
+        boards[i].encode(encoded.position(i * Board.ENCODED_SIZE));
+        return encoded;
+    }
+
+    @Benchmark
+    public long decode() {
+        int i = index++ % boards.length;
+        board.decode(encoded.position(i * Board.ENCODED_SIZE));
+        return board.zobristKey;
+    }
+
+    /* ================================
+       FEN
+       ================================ */
+
+    @Benchmark
+    public int writeFen() {
+        int i = index++ % boards.length;
+        return boards[i].writeFen(fens, i * Board.MAX_FEN_LENGTH);
+    }
+
+    @Benchmark
+    public long loadFen() {
+        int i = index++ % boards.length;
+        board.loadFromFen(fens, i * Board.MAX_FEN_LENGTH, fenEnds[i]);
+        return board.zobristKey;
+    }
+}
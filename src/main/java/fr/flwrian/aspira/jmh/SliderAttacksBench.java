@@ -0,0 +1,69 @@
+package fr.flwrian.aspira.jmh;
+
+import fr.flwrian.aspira.move.MoveGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Magic bitboard lookups on random squares and occupancies, so that they spread over the whole attack table
+ * the way a search does over time, instead of hitting the few cache lines of one position.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class SliderAttacksBench {
+
+    static final int LOOKUPS = 1 << 12;
+
+    int[] squares;
+    long[] occupancies;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MoveGenerator.initSlidingAttacks();
+
+        Random random = new Random(20255);
+        squares = new int[LOOKUPS];
+        occupancies = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            squares[i] = random.nextInt(64);
+            // about a third of the board occupied, like a middlegame
+            occupancies[i] = random.nextLong() & random.nextLong() | random.nextLong() & random.nextLong() & random.nextLong();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long rookAttacks() {
+        long sum = 0L;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += MoveGenerator.getRookAttacks(squares[i], occupancies[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long bishopAttacks() {
+        long sum = 0L;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += MoveGenerator.getBishopAttacks(squares[i], occupancies[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long queenAttacks() {
+        long sum = 0L;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += MoveGenerator.getQueenAttacks(squares[i], occupancies[i]);
+        }
+        return sum;
+    }
+}
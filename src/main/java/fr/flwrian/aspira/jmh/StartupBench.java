@@ -0,0 +1,51 @@
+package fr.flwrian.aspira.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching the engine to "uciok": a new JVM per measurement, on the classpath of the benchmark
+ * (so with the slider attack resource when built by Maven). This is what a GUI or a tournament runner waits
+ * for before every game.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBench {
+
+    @Benchmark
+    public int timeToUciok() throws IOException, InterruptedException {
+        Process engine = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "fr.flwrian.aspira.uci.UCI")
+                .redirectErrorStream(true)
+                .start();
+
+        OutputStream in = engine.getOutputStream();
+        BufferedReader out = new BufferedReader(new InputStreamReader(engine.getInputStream(), StandardCharsets.US_ASCII));
+        in.write("uci\n".getBytes(StandardCharsets.US_ASCII));
+        in.flush();
+
+        String line;
+        while ((line = out.readLine()) != null && !line.equals("uciok")) {
+        }
+        if (line == null) {
+            throw new IllegalStateException("engine exited before uciok");
+        }
+
+        in.write("quit\n".getBytes(StandardCharsets.US_ASCII));
+        in.flush();
+        return engine.waitFor();
+    }
+}
@@ -0,0 +1,81 @@
+package fr.flwrian.aspira.jmh;
+
+import fr.flwrian.aspira.hash.TranspositionTable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TT probe path. Run with the gc profiler to check the probe does not allocate:
+ * java -jar target/benchmarks.jar TranspositionTableBench -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 300, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class TranspositionTableBench {
+
+    static final int KEYS = 1 << 16;
+    static final int MASK = KEYS - 1;
+
+    TranspositionTable tt;
+    long[] storedKeys;
+    long[] missingKeys;
+    int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tt = new TranspositionTable(64);
+
+        Random random = new Random(20255);
+        storedKeys = new long[KEYS];
+        missingKeys = new long[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            storedKeys[i] = random.nextLong();
+            missingKeys[i] = random.nextLong();
+            tt.put(storedKeys[i], i, i & 0x3FFF, i & 0x3F, i % 3);
+        }
+
+        index = 0;
+    }
+
+    /* ================================
+       PROBE : packed long, no allocation
+       ================================ */
+
+    @Benchmark
+    public void probeHit(Blackhole bh) {
+        long data = tt.probe(storedKeys[index++ & MASK]);
+        if (TranspositionTable.isHit(data)) {
+            bh.consume(TranspositionTable.move(data));
+            bh.consume(TranspositionTable.value(data));
+            bh.consume(TranspositionTable.depth(data));
+            bh.consume(TranspositionTable.flag(data));
+        }
+    }
+
+    @Benchmark
+    public void probeMiss(Blackhole bh) {
+        bh.consume(tt.probe(missingKeys[index++ & MASK]));
+    }
+
+    /* ================================
+       GET : old API, one Entry per hit
+       ================================ */
+
+    @Benchmark
+    public void getHit(Blackhole bh) {
+        // consume the Entry itself: in absearch it lives across the whole node and is not scalar replaced
+        bh.consume(tt.get(storedKeys[index++ & MASK]));
+    }
+
+    @Benchmark
+    public void put() {
+        int i = index++ & MASK;
+        tt.put(storedKeys[i], i, i & 0x3FFF, i & 0x3F, i % 3);
+    }
+}
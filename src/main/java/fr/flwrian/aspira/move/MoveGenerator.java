@@ -1,7 +1,12 @@
 package fr.flwrian.aspira.move;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
+import fr.flwrian.aspira.board.AttackInfo;
 import fr.flwrian.aspira.board.Board;
 
 public class MoveGenerator {
@@ -64,8 +69,25 @@ public class MoveGenerator {
 
     private static final long bishopMasks[] = new long[64];
     private static final long rookMasks[] = new long[64];
-    private static final long bishopAttacks[][] = new long[64][512];
-    private static final long rookAttacks[][] = new long[64][4096];
+
+    // every slider attack set in one flat table, rooks then bishops: a square gets 2^relevant bits entries
+    // from its offset, so a lookup is a single load and the table is ~840 KB instead of 2.3 MB of padded rows
+    private static final int rookOffsets[] = new int[64];
+    private static final int bishopOffsets[] = new int[64];
+    private static final long sliderAttacks[];
+
+    static {
+        int size = 0;
+        for (int square = 0; square < 64; square++) {
+            rookOffsets[square] = size;
+            size += 1 << rookRelevantOccupancyBitCount[square];
+        }
+        for (int square = 0; square < 64; square++) {
+            bishopOffsets[square] = size;
+            size += 1 << bishopRelevantOccupancyBitCount[square];
+        }
+        sliderAttacks = new long[size];
+    }
 
     public static final long[] WHITE_PAWN_ATTACKS = new long[64];
     public static final long[] BLACK_PAWN_ATTACKS = new long[64];
@@ -115,7 +137,7 @@ public class MoveGenerator {
                             - relevantOccupancyBitCount));
 
                     // set the attack for the current occupancy
-                    bishopAttacks[square][magicIndex] = generateBishopAttacks(square, occupancy);
+                    sliderAttacks[bishopOffsets[square] + magicIndex] = generateBishopAttacks(square, occupancy);
                 } else {
                     long occupancy = setOccupancy(index, relevantOccupancyBitCount, mask);
 
@@ -124,15 +146,89 @@ public class MoveGenerator {
                             - relevantOccupancyBitCount));
 
                     // set the attack for the current occupancy
-                    rookAttacks[square][magicIndex] = generateRookAttacks(square, occupancy);
+                    sliderAttacks[rookOffsets[square] + magicIndex] = generateRookAttacks(square, occupancy);
                 }
             }
         }
     }
 
+    // attack table written at build time (SliderAttacksWriter, process-classes phase), next to this class
+    static final String SLIDER_ATTACKS_RESOURCE = "slider-attacks.bin";
+
+    // version of the table content: bump it whenever generateRookAttacks, generateBishopAttacks or the
+    // table layout change, so that a resource written by older code is recomputed instead of loaded
+    private static final int SLIDER_ATTACKS_FORMAT = 2;
+
+    // blockers of the load-time spot check, rotated to each square: some rays blocked near, some far
+    private static final long SPOT_CHECK_BLOCKERS = 0x0024_4200_8118_0042L;
+
+    // Loads the attack table from the build resource, or computes it when there is none (plain compile)
+    // or it does not match the magics, the format version or the attacks of this class
     public static void initSlidingAttacks() {
+        if (!loadSliderAttacks()) {
+            initSliderAttacks(false);
+            initSliderAttacks(true);
+        }
+    }
+
+    // One bulk read: a fingerprint, then the flat table
+    private static boolean loadSliderAttacks() {
+        byte[] bytes;
+        try (InputStream in = MoveGenerator.class.getResourceAsStream(SLIDER_ATTACKS_RESOURCE)) {
+            if (in == null) {
+                return false;
+            }
+            bytes = in.readAllBytes();
+        } catch (IOException e) {
+            return false;
+        }
+        if (bytes.length != Long.BYTES * (1 + sliderAttacks.length)) {
+            return false;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getLong() != sliderAttacksFingerprint()) {
+            return false;
+        }
+        for (int square = 0; square < 64; square++) {
+            bishopMasks[square] = maskBishopAttacks(square);
+            rookMasks[square] = maskRookAttacks(square);
+        }
+        buffer.asLongBuffer().get(sliderAttacks);
+
+        // in case SLIDER_ATTACKS_FORMAT was not bumped: spot check the empty board and one occupied board per square
+        for (int square = 0; square < 64; square++) {
+            long blockers = Long.rotateLeft(SPOT_CHECK_BLOCKERS, square) & ~(1L << square);
+            if (getRookAttacks(square, 0L) != generateRookAttacks(square, 0L)
+                    || getBishopAttacks(square, 0L) != generateBishopAttacks(square, 0L)
+                    || getRookAttacks(square, blockers) != generateRookAttacks(square, blockers)
+                    || getBishopAttacks(square, blockers) != generateBishopAttacks(square, blockers)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Computes the attack table and writes it in the format loadSliderAttacks reads
+    static void writeSliderAttacks(OutputStream out) throws IOException {
         initSliderAttacks(false);
         initSliderAttacks(true);
+
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * (1 + sliderAttacks.length));
+        buffer.putLong(sliderAttacksFingerprint());
+        buffer.asLongBuffer().put(sliderAttacks);
+        out.write(buffer.array());
+    }
+
+    // Mix of the format version, the magics, the relevant bit counts and the table size
+    private static long sliderAttacksFingerprint() {
+        long h = (long) SLIDER_ATTACKS_FORMAT << 32 | sliderAttacks.length;
+        for (int square = 0; square < 64; square++) {
+            h = h * 0x9E3779B97F4A7C15L + rooksMagicNumbers[square];
+            h = h * 0x9E3779B97F4A7C15L + bishopsMagicNumbers[square];
+            h = h * 0x9E3779B97F4A7C15L + (rookRelevantOccupancyBitCount[square] << 8 | bishopRelevantOccupancyBitCount[square]);
+        }
+        return h;
     }
 
     // get bishop attacks
@@ -140,7 +236,7 @@ public class MoveGenerator {
         occupancy &= bishopMasks[square];
         occupancy *= bishopsMagicNumbers[square];
         occupancy >>>= (64 - bishopRelevantOccupancyBitCount[square]);
-        return bishopAttacks[square][(int) occupancy];
+        return sliderAttacks[bishopOffsets[square] + (int) occupancy];
     }
 
     // get rook attacks
@@ -148,7 +244,7 @@ public class MoveGenerator {
         occupancy &= rookMasks[square];
         occupancy *= rooksMagicNumbers[square];
         occupancy >>>= (64 - rookRelevantOccupancyBitCount[square]);
-        return rookAttacks[square][(int) occupancy];
+        return sliderAttacks[rookOffsets[square] + (int) occupancy];
     }
 
     // get queen attacks
@@ -274,7 +370,7 @@ public class MoveGenerator {
         // =========================
         // PAWNS
         // =========================
-        long pawns = board.whiteTurn ? board.whitePawns : board.blackPawns;
+        long pawns = board.pawns & (board.whiteTurn ? board.whitePieces : board.blackPieces);
 
         while (pawns != 0L) {
             long pawn = pawns & -pawns;
@@ -353,7 +449,7 @@ public class MoveGenerator {
         // =========================
         // KNIGHTS
         // =========================
-        long knights = board.whiteTurn ? board.whiteKnights : board.blackKnights;
+        long knights = board.knights & (board.whiteTurn ? board.whitePieces : board.blackPieces);
 
         while (knights != 0L) {
             long knight = knights & -knights;
@@ -392,7 +488,7 @@ public class MoveGenerator {
         // =========================
         // BISHOPS
         // =========================
-        long bishops = board.whiteTurn ? board.whiteBishops : board.blackBishops;
+        long bishops = board.bishops & (board.whiteTurn ? board.whitePieces : board.blackPieces);
 
         while (bishops != 0L) {
             long bishop = bishops & -bishops;
@@ -431,7 +527,7 @@ public class MoveGenerator {
         // =========================
         // ROOKS
         // =========================
-        long rooks = board.whiteTurn ? board.whiteRooks : board.blackRooks;
+        long rooks = board.rooks & (board.whiteTurn ? board.whitePieces : board.blackPieces);
 
         while (rooks != 0L) {
             long rook = rooks & -rooks;
@@ -470,7 +566,7 @@ public class MoveGenerator {
         // =========================
         // QUEENS
         // =========================
-        long queens = board.whiteTurn ? board.whiteQueens : board.blackQueens;
+        long queens = board.queens & (board.whiteTurn ? board.whitePieces : board.blackPieces);
 
         while (queens != 0L) {
             long queen = queens & -queens;
@@ -509,7 +605,7 @@ public class MoveGenerator {
         // =========================
         // KING
         // =========================
-        long king = board.whiteTurn ? board.whiteKing : board.blackKing;
+        long king = board.kings & (board.whiteTurn ? board.whitePieces : board.blackPieces);
         int from = Board.getSquare(king);
 
         long kingMoves = board.whiteTurn
@@ -608,7 +704,7 @@ public class MoveGenerator {
                 knightMoves &= knightMoves - 1;
                 int to = Board.getSquare(move);
 
-                if ((move & board.bitboard) != 0L) {
+                if ((move & board.getBoard()) != 0L) {
                     int capturedPiece = board.getPiece(to);
 
                     int packed = PackedMove.encode(from, to, Board.KNIGHT, capturedPiece, 0, 0);
@@ -630,7 +726,7 @@ public class MoveGenerator {
                     : generateBlackBishopMoves(bishop, board);
 
             // capture-only filter
-            movesBB &= board.bitboard;
+            movesBB &= board.getBoard();
 
             while (movesBB != 0L) {
                 long move = movesBB & -movesBB;
@@ -661,7 +757,7 @@ public class MoveGenerator {
                     ? generateWhiteRookMoves(rook, board)
                     : generateBlackRookMoves(rook, board);
 
-            movesBB &= board.bitboard;
+            movesBB &= board.getBoard();
 
             while (movesBB != 0L) {
                 long move = movesBB & -movesBB;
@@ -691,7 +787,7 @@ public class MoveGenerator {
                     ? generateWhiteQueenMoves(queen, board)
                     : generateBlackQueenMoves(queen, board);
 
-            movesBB &= board.bitboard;
+            movesBB &= board.getBoard();
 
             while (movesBB != 0L) {
                 long move = movesBB & -movesBB;
@@ -717,7 +813,7 @@ public class MoveGenerator {
                 ? generateWhiteKingMoves(king, board)
                 : generateBlackKingMoves(king, board);
 
-        kingMoves &= board.bitboard;
+        kingMoves &= board.getBoard();
 
         while (kingMoves != 0L) {
             long move = kingMoves & -kingMoves;
@@ -739,14 +835,14 @@ public class MoveGenerator {
 
     public static boolean isSquareAttacked(Board board, int sq, boolean byWhite) {
 
-        long occupancy = board.bitboard;
+        long occupancy = board.getBoard();
 
-        long pawns   = byWhite ? board.whitePawns   : board.blackPawns;
-        long knights = byWhite ? board.whiteKnights : board.blackKnights;
-        long bishops = byWhite ? board.whiteBishops : board.blackBishops;
-        long rooks   = byWhite ? board.whiteRooks   : board.blackRooks;
-        long queens  = byWhite ? board.whiteQueens  : board.blackQueens;
-        long king    = byWhite ? board.whiteKing    : board.blackKing;
+        long pawns   = board.pawns & (byWhite ? board.whitePieces : board.blackPieces);
+        long knights = board.knights & (byWhite ? board.whitePieces : board.blackPieces);
+        long bishops = board.bishops & (byWhite ? board.whitePieces : board.blackPieces);
+        long rooks   = board.rooks & (byWhite ? board.whitePieces : board.blackPieces);
+        long queens  = board.queens & (byWhite ? board.whitePieces : board.blackPieces);
+        long king    = board.kings & (byWhite ? board.whitePieces : board.blackPieces);
 
         if ((Board.KNIGHT_ATTACKS[sq] & knights) != 0) return true;
 
@@ -767,15 +863,15 @@ public class MoveGenerator {
     // Get attackers for a given square
     public static long getAttackers(Board board, int sq, boolean byWhite) {
 
-        long occupancy = board.bitboard;
+        long occupancy = board.getBoard();
         long attackers = 0L;
 
-        long pawns   = byWhite ? board.whitePawns   : board.blackPawns;
-        long knights = byWhite ? board.whiteKnights : board.blackKnights;
-        long bishops = byWhite ? board.whiteBishops : board.blackBishops;
-        long rooks   = byWhite ? board.whiteRooks   : board.blackRooks;
-        long queens  = byWhite ? board.whiteQueens  : board.blackQueens;
-        long king    = byWhite ? board.whiteKing    : board.blackKing;
+        long pawns   = board.pawns & (byWhite ? board.whitePieces : board.blackPieces);
+        long knights = board.knights & (byWhite ? board.whitePieces : board.blackPieces);
+        long bishops = board.bishops & (byWhite ? board.whitePieces : board.blackPieces);
+        long rooks   = board.rooks & (byWhite ? board.whitePieces : board.blackPieces);
+        long queens  = board.queens & (byWhite ? board.whitePieces : board.blackPieces);
+        long king    = board.kings & (byWhite ? board.whitePieces : board.blackPieces);
 
         if ((Board.KNIGHT_ATTACKS[sq] & knights) != 0)
             attackers |= (Board.KNIGHT_ATTACKS[sq] & knights);
@@ -806,40 +902,40 @@ public class MoveGenerator {
         long whiteAttacks = 0L;
 
         // Générer les mouvements des pions blancs
-        long whitePawnMask = generatePawnMask(board.whitePawns, true);
+        long whitePawnMask = generatePawnMask(board.getWhitePawns(), true);
         whiteAttacks |= whitePawnMask;
 
         // Générer les mouvements des cavaliers blancs
-        long whiteKnightMask = generateKnightMask(board.whiteKnights);
+        long whiteKnightMask = generateKnightMask(board.getWhiteKnights());
         whiteAttacks |= whiteKnightMask;
 
         // Générer les mouvements des fous blancs
-        long whiteBishops = board.whiteBishops;
+        long whiteBishops = board.getWhiteBishops();
         while (whiteBishops != 0L) {
             int bishopSquare = Long.numberOfTrailingZeros(whiteBishops);
             whiteBishops &= whiteBishops - 1;
-            whiteAttacks |= getBishopAttacks(bishopSquare, board.bitboard);
+            whiteAttacks |= getBishopAttacks(bishopSquare, board.getBoard());
         }
 
         // Générer les mouvements des tours blanches
-        long whiteRooks = board.whiteRooks;
+        long whiteRooks = board.getWhiteRooks();
         while (whiteRooks != 0L) {
             int rookSquare = Long.numberOfTrailingZeros(whiteRooks);
             whiteRooks &= whiteRooks - 1;
-            whiteAttacks |= getRookAttacks(rookSquare, board.bitboard);
+            whiteAttacks |= getRookAttacks(rookSquare, board.getBoard());
         }
 
         // Générer les mouvements des reines blanches
-        long whiteQueens = board.whiteQueens;
+        long whiteQueens = board.getWhiteQueens();
         while (whiteQueens != 0L) {
             int queenSquare = Long.numberOfTrailingZeros(whiteQueens);
             whiteQueens &= whiteQueens - 1;
-            whiteAttacks |= getBishopAttacks(queenSquare, board.bitboard);
-            whiteAttacks |= getRookAttacks(queenSquare, board.bitboard);
+            whiteAttacks |= getBishopAttacks(queenSquare, board.getBoard());
+            whiteAttacks |= getRookAttacks(queenSquare, board.getBoard());
         }
 
         // Générer les mouvements des rois blancs
-        long whiteKingMask = generateKingMask(board.whiteKing);
+        long whiteKingMask = generateKingMask(board.getWhiteKing());
         whiteAttacks |= whiteKingMask;
 
         return whiteAttacks;
@@ -849,40 +945,40 @@ public class MoveGenerator {
         long blackAttacks = 0L;
 
         // Générer les mouvements des pions noirs
-        long blackPawnMask = generatePawnMask(board.blackPawns, false);
+        long blackPawnMask = generatePawnMask(board.getBlackPawns(), false);
         blackAttacks |= blackPawnMask;
 
         // Générer les mouvements des cavaliers noirs
-        long blackKnightMask = generateKnightMask(board.blackKnights);
+        long blackKnightMask = generateKnightMask(board.getBlackKnights());
         blackAttacks |= blackKnightMask;
 
         // Générer les mouvements des fous noirs
-        long blackBishops = board.blackBishops;
+        long blackBishops = board.getBlackBishops();
         while (blackBishops != 0L) {
             int bishopSquare = Long.numberOfTrailingZeros(blackBishops);
             blackBishops &= blackBishops - 1;
-            blackAttacks |= getBishopAttacks(bishopSquare, board.bitboard);
+            blackAttacks |= getBishopAttacks(bishopSquare, board.getBoard());
         }
 
         // Générer les mouvements des tours noirs
-        long blackRooks = board.blackRooks;
+        long blackRooks = board.getBlackRooks();
         while (blackRooks != 0L) {
             int rookSquare = Long.numberOfTrailingZeros(blackRooks);
             blackRooks &= blackRooks - 1;
-            blackAttacks |= getRookAttacks(rookSquare, board.bitboard);
+            blackAttacks |= getRookAttacks(rookSquare, board.getBoard());
         }
 
         // Générer les mouvements des reines noires
-        long blackQueens = board.blackQueens;
+        long blackQueens = board.getBlackQueens();
         while (blackQueens != 0L) {
             int queenSquare = Long.numberOfTrailingZeros(blackQueens);
             blackQueens &= blackQueens - 1;
-            blackAttacks |= getBishopAttacks(queenSquare, board.bitboard);
-            blackAttacks |= getRookAttacks(queenSquare, board.bitboard);
+            blackAttacks |= getBishopAttacks(queenSquare, board.getBoard());
+            blackAttacks |= getRookAttacks(queenSquare, board.getBoard());
         }
 
         // Générer les mouvements des rois noirs
-        long blackKingMask = generateKingMask(board.blackKing);
+        long blackKingMask = generateKingMask(board.getBlackKing());
         blackAttacks |= blackKingMask;
 
         return blackAttacks;
@@ -1131,7 +1227,7 @@ public class MoveGenerator {
             int bishopSquare = Long.numberOfTrailingZeros(bishops);
             bishops &= bishops - 1;
 
-            bishopMoves |= getBishopAttacks(bishopSquare, board.bitboard);
+            bishopMoves |= getBishopAttacks(bishopSquare, board.getBoard());
 
         }
 
@@ -1152,7 +1248,7 @@ public class MoveGenerator {
             int rookSquare = Long.numberOfTrailingZeros(rooks);
             rooks &= rooks - 1;
 
-            rookMoves |= getRookAttacks(rookSquare, board.bitboard);
+            rookMoves |= getRookAttacks(rookSquare, board.getBoard());
 
         }
 
@@ -1173,8 +1269,8 @@ public class MoveGenerator {
             int queenSquare = Long.numberOfTrailingZeros(queens);
             queens &= queens - 1;
 
-            queenMoves |= generateBishopAttacks(queenSquare, board.bitboard);
-            queenMoves |= generateRookAttacks(queenSquare, board.bitboard);
+            queenMoves |= generateBishopAttacks(queenSquare, board.getBoard());
+            queenMoves |= generateRookAttacks(queenSquare, board.getBoard());
 
         }
 
@@ -1199,9 +1295,9 @@ public class MoveGenerator {
         // alors on peut roquer
 
         // Si on a les droits de roquer du côté de du roi
-        if (board.whiteCastleKingSide == 1L) {
+        if ((board.castlingRights & Board.WHITE_KING_SIDE_CASTLING) != 0) {
             // Si la tour est à sa place
-            if ((board.whiteRooks & Board.WHITE_KING_SIDE_ROOK_SQUARE) != 0L) {
+            if ((board.getWhiteRooks() & Board.WHITE_KING_SIDE_ROOK_SQUARE) != 0L) {
                 // Si il n'y a pas de pièces entre le roi et la tour
                 if ((Board.WHITE_KING_SIDE_CASTLE_EMPTY_SQUARES_MASK & board.getBoard()) == 0L) {
                     // Si les cases ne sont pas attaquées
@@ -1215,9 +1311,9 @@ public class MoveGenerator {
         }
 
         // Si on a les droits de roquer du côté de la dame
-        if (board.whiteCastleQueenSide == 1L) {
+        if ((board.castlingRights & Board.WHITE_QUEEN_SIDE_CASTLING) != 0) {
             // Si la tour est à sa place
-            if ((board.whiteRooks & Board.WHITE_QUEEN_SIDE_ROOK_SQUARE) != 0L) {
+            if ((board.getWhiteRooks() & Board.WHITE_QUEEN_SIDE_ROOK_SQUARE) != 0L) {
                 // Si il n'y a pas de pièces entre le roi et la tour
                 if ((Board.WHITE_QUEEN_SIDE_CASTLE_EMPTY_SQUARES_MASK & board.getBoard()) == 0L) {
                     // Si les cases ne sont pas attaquées
@@ -1244,9 +1340,9 @@ public class MoveGenerator {
         // alors on peut roquer
 
         // Si on a les droits de roquer du côté de du roi
-        if (board.blackCastleKingSide == 1L) {
+        if ((board.castlingRights & Board.BLACK_KING_SIDE_CASTLING) != 0) {
             // Si la tour est à sa place
-            if ((board.blackRooks & Board.BLACK_KING_SIDE_ROOK_SQUARE) != 0L) {
+            if ((board.getBlackRooks() & Board.BLACK_KING_SIDE_ROOK_SQUARE) != 0L) {
                 // Si il n'y a pas de pièces entre le roi et la tour
                 if ((Board.BLACK_KING_SIDE_CASTLE_EMPTY_SQUARES_MASK & board.getBoard()) == 0L) {
                     // Si les cases ne sont pas attaquées
@@ -1260,9 +1356,9 @@ public class MoveGenerator {
         }
 
         // Si on a les droits de roquer du côté de la dame
-        if (board.blackCastleQueenSide == 1L) {
+        if ((board.castlingRights & Board.BLACK_QUEEN_SIDE_CASTLING) != 0) {
             // Si la tour est à sa place
-            if ((board.blackRooks & Board.BLACK_QUEEN_SIDE_ROOK_SQUARE) != 0L) {
+            if ((board.getBlackRooks() & Board.BLACK_QUEEN_SIDE_ROOK_SQUARE) != 0L) {
                 // Si il n'y a pas de pièces entre le roi et la tour
                 if ((Board.BLACK_QUEEN_SIDE_CASTLE_EMPTY_SQUARES_MASK & board.getBoard()) == 0L) {
                     // Si les cases ne sont pas attaquées
@@ -1304,7 +1400,7 @@ public class MoveGenerator {
             int bishopSquare = Long.numberOfTrailingZeros(bishops);
             bishops &= bishops - 1;
 
-            bishopMoves |= generateBishopAttacks(bishopSquare, board.bitboard);
+            bishopMoves |= generateBishopAttacks(bishopSquare, board.getBoard());
 
         }
 
@@ -1325,7 +1421,7 @@ public class MoveGenerator {
             int rookSquare = Long.numberOfTrailingZeros(rooks);
             rooks &= rooks - 1;
 
-            rookMoves |= generateRookAttacks(rookSquare, board.bitboard);
+            rookMoves |= generateRookAttacks(rookSquare, board.getBoard());
 
         }
 
@@ -1346,8 +1442,8 @@ public class MoveGenerator {
             int queenSquare = Long.numberOfTrailingZeros(queens);
             queens &= queens - 1;
 
-            queenMoves |= generateBishopAttacks(queenSquare, board.bitboard);
-            queenMoves |= generateRookAttacks(queenSquare, board.bitboard);
+            queenMoves |= generateBishopAttacks(queenSquare, board.getBoard());
+            queenMoves |= generateRookAttacks(queenSquare, board.getBoard());
 
         }
 
@@ -1356,4 +1452,553 @@ public class MoveGenerator {
 
         return queenMoves;
     }
+
+    // =========================
+    // LEGAL MOVE GENERATION
+    // =========================
+
+    // squares strictly between two aligned squares, 0 if they are not aligned
+    public static final long[][] BETWEEN = new long[64][64];
+    // the full rank, file or diagonal through two aligned squares, 0 if they are not aligned
+    public static final long[][] LINE = new long[64][64];
+
+    static {
+        for (int a = 0; a < 64; a++) {
+            long rookRays = generateRookAttacks(a, 0L);
+            long bishopRays = generateBishopAttacks(a, 0L);
+
+            for (int b = 0; b < 64; b++) {
+                long bBB = 1L << b;
+
+                if ((rookRays & bBB) != 0L) {
+                    BETWEEN[a][b] = generateRookAttacks(a, bBB) & generateRookAttacks(b, 1L << a);
+                    LINE[a][b] = (rookRays & generateRookAttacks(b, 0L)) | (1L << a) | bBB;
+                } else if ((bishopRays & bBB) != 0L) {
+                    BETWEEN[a][b] = generateBishopAttacks(a, bBB) & generateBishopAttacks(b, 1L << a);
+                    LINE[a][b] = (bishopRays & generateBishopAttacks(b, 0L)) | (1L << a) | bBB;
+                }
+            }
+        }
+    }
+
+    /**
+     * Generate only legal moves, in the same order as generatePseudoLegalMoves.
+     * Checkers, pinned pieces and the check evasion mask are computed once for the position,
+     * so no move has to be played and undone to be validated.
+     */
+    public static PackedMoveList generateLegalMoves(Board board, PackedMoveList moves) {
+        moves.clear();
+        generateLegal(board, moves, ALL_MOVES);
+        return moves;
+    }
+
+    /**
+     * Legal version of generateCaptureMoves: captures, en passant and capturing promotions only.
+     */
+    public static PackedMoveList generateLegalCaptureMoves(Board board, PackedMoveList moves) {
+        moves.clear();
+        generateLegal(board, moves, CAPTURE_MOVES);
+        return moves;
+    }
+
+    /**
+     * Every legal move that is not in generateLegalCaptureMoves: pushes, quiet promotions and castling.
+     */
+    public static PackedMoveList generateLegalQuietMoves(Board board, PackedMoveList moves) {
+        moves.clear();
+        generateLegal(board, moves, QUIET_MOVES);
+        return moves;
+    }
+
+    /**
+     * Full packed move for the from/to/promotion of a compact move (see PackedMove.toCompact),
+     * encoded the way generateLegalMoves would encode it here. 0 if the from square holds no piece
+     * of the side to move. The result is not validated: check it with isPseudoLegal and isLegal.
+     */
+    public static int decodeCompactMove(Board board, int compactMove) {
+        int from = PackedMove.getFrom(compactMove);
+        int to = PackedMove.getTo(compactMove);
+        int promotion = PackedMove.getPromotion(compactMove);
+        long us = board.whiteTurn ? board.whitePieces : board.blackPieces;
+
+        if ((us & (1L << from)) == 0L) {
+            return 0;
+        }
+
+        int piece = board.getPiece(from);
+        int captured = board.getPiece(to);
+        int flags = captured != Board.EMPTY ? Move.CAPTURE : Move.DEFAULT;
+
+        if (piece == Board.PAWN) {
+            if (promotion != 0) {
+                flags = Move.PROMOTION;
+            } else if (Math.abs(to - from) == 16) {
+                flags = Move.DOUBLE_PAWN_PUSH;
+            } else if ((1L << to) == board.enPassantSquare && captured == Board.EMPTY) {
+                flags = Move.EN_PASSANT;
+                captured = Board.PAWN;
+            }
+        } else if (piece == Board.KING && Math.abs(to - from) == 2) {
+            flags = Move.CASTLING;
+        }
+
+        return PackedMove.encode(from, to, piece, captured, promotion, flags);
+    }
+
+    /**
+     * True if the move could be generated in this position, ignoring whether it leaves the king in check
+     * (except for castling, fully checked here). A move from another position (TT move, killer) can be
+     * anything: every field has to match the board, otherwise makeMove would corrupt it.
+     */
+    public static boolean isPseudoLegal(Board board, int move) {
+        if (move == 0 || move != decodeCompactMove(board, PackedMove.toCompact(move))) {
+            return false;
+        }
+
+        final boolean white = board.whiteTurn;
+        final int from = PackedMove.getFrom(move);
+        final int to = PackedMove.getTo(move);
+        final int promotion = PackedMove.getPromotion(move);
+        final long toBB = 1L << to;
+        final long occupancy = board.getBoard();
+        final long us = white ? board.whitePieces : board.blackPieces;
+
+        if ((us & toBB) != 0L) {
+            return false;
+        }
+
+        switch (PackedMove.getPieceFrom(move)) {
+            case Board.PAWN: {
+                boolean lastRank = to >= 56 || to <= 7;
+                if (lastRank != (promotion != 0)
+                        || (promotion != 0 && (promotion < Board.KNIGHT || promotion > Board.QUEEN))) {
+                    return false;
+                }
+                if (PackedMove.isCapture(move)) {
+                    // en passant target or enemy piece, decodeCompactMove already told them apart
+                    return ((white ? WHITE_PAWN_ATTACKS[from] : BLACK_PAWN_ATTACKS[from]) & toBB) != 0L;
+                }
+                int push = white ? 8 : -8;
+                if (to == from + push) {
+                    return (occupancy & toBB) == 0L;
+                }
+                long startRank = white ? Board.RANK_2 : Board.RANK_7;
+                return to == from + 2 * push && ((1L << from) & startRank) != 0L
+                        && (occupancy & (toBB | (1L << (from + push)))) == 0L;
+            }
+            case Board.KNIGHT:
+                return promotion == 0 && (Board.KNIGHT_ATTACKS[from] & toBB) != 0L;
+            case Board.BISHOP:
+                return promotion == 0 && (getBishopAttacks(from, occupancy) & toBB) != 0L;
+            case Board.ROOK:
+                return promotion == 0 && (getRookAttacks(from, occupancy) & toBB) != 0L;
+            case Board.QUEEN:
+                return promotion == 0 && (getQueenAttacks(from, occupancy) & toBB) != 0L;
+            case Board.KING:
+                if (promotion != 0) {
+                    return false;
+                }
+                if (PackedMove.getFlags(move) == Move.CASTLING) {
+                    return isCastlingAllowed(board, from, to);
+                }
+                return (Board.KING_ATTACKS[from] & toBB) != 0L;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * True if a pseudo legal move (see isPseudoLegal) does not leave the side to move in check.
+     */
+    public static boolean isLegal(Board board, int move) {
+        final boolean white = board.whiteTurn;
+        final int from = PackedMove.getFrom(move);
+        final int to = PackedMove.getTo(move);
+        final int flags = PackedMove.getFlags(move);
+        final long occupancy = board.getBoard();
+        final long us = white ? board.whitePieces : board.blackPieces;
+        final long them = white ? board.blackPieces : board.whitePieces;
+        final long king = board.kings & us;
+        final int kingSquare = Long.numberOfTrailingZeros(king);
+
+        final AttackInfo info = board.getAttackInfo();
+
+        if (from == kingSquare) {
+            // castling was fully validated by isPseudoLegal
+            return flags == Move.CASTLING || (info.threats & (1L << to)) == 0L;
+        }
+
+        final long diagonalSliders = (board.bishops | board.queens) & them;
+        final long straightSliders = (board.rooks | board.queens) & them;
+        final long checkers = info.checkers;
+
+        if (flags == Move.EN_PASSANT) {
+            return isLegalEnPassant(from, to, kingSquare, occupancy, checkers,
+                    (board.pawns | board.knights) & them, diagonalSliders, straightSliders, white);
+        }
+
+        if (checkers != 0L) {
+            if ((checkers & (checkers - 1)) != 0L) {
+                return false;
+            }
+            long evasionMask = checkers | BETWEEN[kingSquare][Long.numberOfTrailingZeros(checkers)];
+            if ((evasionMask & (1L << to)) == 0L) {
+                return false;
+            }
+        }
+
+        return (info.pinned & (1L << from)) == 0L || (LINE[kingSquare][from] & (1L << to)) != 0L;
+    }
+
+    // Castling rights, rook, empty path and no attacked square on the king's way (king square included)
+    private static boolean isCastlingAllowed(Board board, int kingFrom, int kingTo) {
+        long emptyMask, safeMask, rook;
+        int right;
+
+        switch (kingTo) {
+            case 6:
+                right = Board.WHITE_KING_SIDE_CASTLING;
+                rook = Board.WHITE_KING_SIDE_ROOK_SQUARE;
+                emptyMask = Board.WHITE_KING_SIDE_CASTLE_EMPTY_SQUARES_MASK;
+                safeMask = Board.WHITE_KING_SIDE_CASTLE_NEED_TO_NOT_BE_ATTACKED_MASK;
+                break;
+            case 2:
+                right = Board.WHITE_QUEEN_SIDE_CASTLING;
+                rook = Board.WHITE_QUEEN_SIDE_ROOK_SQUARE;
+                emptyMask = Board.WHITE_QUEEN_SIDE_CASTLE_EMPTY_SQUARES_MASK;
+                safeMask = Board.WHITE_QUEEN_SIDE_CASTLE_NEED_TO_NOT_BE_ATTACKED_MASK;
+                break;
+            case 62:
+                right = Board.BLACK_KING_SIDE_CASTLING;
+                rook = Board.BLACK_KING_SIDE_ROOK_SQUARE;
+                emptyMask = Board.BLACK_KING_SIDE_CASTLE_EMPTY_SQUARES_MASK;
+                safeMask = Board.BLACK_KING_SIDE_CASTLE_NEED_TO_NOT_BE_ATTACKED_MASK;
+                break;
+            case 58:
+                right = Board.BLACK_QUEEN_SIDE_CASTLING;
+                rook = Board.BLACK_QUEEN_SIDE_ROOK_SQUARE;
+                emptyMask = Board.BLACK_QUEEN_SIDE_CASTLE_EMPTY_SQUARES_MASK;
+                safeMask = Board.BLACK_QUEEN_SIDE_CASTLE_NEED_TO_NOT_BE_ATTACKED_MASK;
+                break;
+            default:
+                return false;
+        }
+
+        boolean white = kingTo < 8;
+        long us = white ? board.whitePieces : board.blackPieces;
+        long occupancy = board.getBoard();
+
+        long kingStart = white ? Board.E1 : Board.E8;
+
+        return white == board.whiteTurn
+                && (board.castlingRights & right) != 0
+                && (1L << kingFrom) == kingStart
+                && (board.kings & us & kingStart) != 0L
+                && (board.rooks & us & rook) != 0L
+                && (occupancy & emptyMask) == 0L
+                && (board.getAttackInfo().threats & safeMask) == 0L;
+    }
+
+    /**
+     * Pieces of the side to move that are pinned against their own king.
+     */
+    public static long getPinnedPieces(Board board) {
+        boolean white = board.whiteTurn;
+        long us = white ? board.whitePieces : board.blackPieces;
+        long them = white ? board.blackPieces : board.whitePieces;
+        int kingSquare = Long.numberOfTrailingZeros(board.kings & us);
+        long diagonalSliders = (board.bishops | board.queens) & them;
+        long straightSliders = (board.rooks | board.queens) & them;
+
+        return pinnedPieces(kingSquare, us, board.getBoard(), them, diagonalSliders, straightSliders);
+    }
+
+    /**
+     * Pieces of the side to move standing between one of its own sliders and the enemy king:
+     * moving one of them off that line gives a discovered check.
+     */
+    public static long getDiscoveredCheckBlockers(Board board) {
+        boolean white = board.whiteTurn;
+        long us = white ? board.whitePieces : board.blackPieces;
+        long them = white ? board.blackPieces : board.whitePieces;
+        int kingSquare = Long.numberOfTrailingZeros(board.kings & them);
+        long diagonalSliders = (board.bishops | board.queens) & us;
+        long straightSliders = (board.rooks | board.queens) & us;
+
+        // same x-ray as for pins: the enemy king looks through our pieces for our sliders
+        return pinnedPieces(kingSquare, us, board.getBoard(), them, diagonalSliders, straightSliders);
+    }
+
+    private static long pinnedPieces(int kingSquare, long us, long occupancy, long them,
+            long diagonalSliders, long straightSliders) {
+        // enemy sliders that would see the king if our pieces were not there
+        long snipers = (getBishopAttacks(kingSquare, them) & diagonalSliders)
+                | (getRookAttacks(kingSquare, them) & straightSliders);
+        long pinned = 0L;
+
+        while (snipers != 0L) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+
+            long blockers = BETWEEN[kingSquare][sniper] & occupancy;
+            if ((blockers & (blockers - 1)) == 0L && (blockers & us) != 0L) {
+                pinned |= blockers;
+            }
+        }
+        return pinned;
+    }
+
+    private static final int ALL_MOVES = 0;
+    private static final int CAPTURE_MOVES = 1;
+    private static final int QUIET_MOVES = 2;
+
+    private static void generateLegal(Board board, PackedMoveList moves, int type) {
+        final boolean capturesOnly = type == CAPTURE_MOVES;
+        final boolean white = board.whiteTurn;
+        final long occupancy = board.getBoard();
+        final long us = white ? board.whitePieces : board.blackPieces;
+        final long them = white ? board.blackPieces : board.whitePieces;
+        final long king = board.kings & us;
+        final int kingSquare = Long.numberOfTrailingZeros(king);
+
+        final long theirPawns = board.pawns & them;
+        final long theirKnights = board.knights & them;
+        final long diagonalSliders = (board.bishops | board.queens) & them;
+        final long straightSliders = (board.rooks | board.queens) & them;
+
+        // shared with the check test and the other generation stages of this node
+        final AttackInfo info = board.getAttackInfo();
+        final long checkers = info.checkers;
+        final long pinned = info.pinned;
+
+        // squares a non-king piece may move to: anything when not in check,
+        // capture or block the checker in single check, nothing in double check
+        long evasionMask = ~0L;
+        if (checkers != 0L) {
+            evasionMask = (checkers & (checkers - 1)) != 0L
+                    ? 0L
+                    : checkers | BETWEEN[kingSquare][Long.numberOfTrailingZeros(checkers)];
+        }
+
+        final long allowed = capturesOnly ? them : type == QUIET_MOVES ? ~occupancy : ~us;
+        final long targets = allowed & evasionMask;
+
+        if (evasionMask != 0L) {
+            // =========================
+            // PAWNS
+            // =========================
+            long pawns = board.pawns & us;
+
+            while (pawns != 0L) {
+                long pawn = pawns & -pawns;
+                pawns &= pawns - 1;
+
+                int from = Board.getSquare(pawn);
+                long pawnMoves = generatePawnMoves(pawn, board);
+                long pinMask = (pawn & pinned) != 0L ? LINE[kingSquare][from] : ~0L;
+
+                // en passant is validated on its own, everything else against the masks
+                long enPassant = pawnMoves & board.enPassantSquare;
+                pawnMoves &= targets & pinMask & ~enPassant;
+
+                if (enPassant != 0L && type != QUIET_MOVES && isLegalEnPassant(from, Board.getSquare(enPassant), kingSquare, occupancy,
+                        checkers, theirPawns | theirKnights, diagonalSliders, straightSliders, white)) {
+                    pawnMoves |= enPassant;
+                }
+
+                while (pawnMoves != 0L) {
+                    long move = pawnMoves & -pawnMoves;
+                    pawnMoves &= pawnMoves - 1;
+
+                    int to = Board.getSquare(move);
+                    boolean isPromotion = (to >= 56 || to <= 7);
+                    boolean isEnPassant = (move & board.enPassantSquare) != 0L;
+
+                    // double pawn push
+                    if (((pawn << 16) == move) || ((pawn >> 16) == move)) {
+                        moves.add(PackedMove.encode(from, to, Board.PAWN, Board.EMPTY, 0, Move.DOUBLE_PAWN_PUSH));
+                        continue;
+                    }
+
+                    int captured = isEnPassant ? Board.PAWN : board.getPiece(to);
+
+                    if (isPromotion) {
+                        for (int promo : PROMO_PIECES) {
+                            moves.add(PackedMove.encode(from, to, Board.PAWN, captured, promo, Move.PROMOTION));
+                        }
+                    } else if (isEnPassant) {
+                        moves.add(PackedMove.encode(from, to, Board.PAWN, Board.PAWN, 0, Move.EN_PASSANT));
+                    } else if (captured != Board.EMPTY) {
+                        moves.add(PackedMove.encode(from, to, Board.PAWN, captured, 0, Move.CAPTURE));
+                    } else {
+                        moves.add(PackedMove.encode(from, to, Board.PAWN, Board.EMPTY, 0, Move.DEFAULT));
+                    }
+                }
+            }
+
+            // =========================
+            // KNIGHTS (a pinned knight can never move)
+            // =========================
+            long knights = board.knights & us & ~pinned;
+
+            while (knights != 0L) {
+                int from = Long.numberOfTrailingZeros(knights);
+                knights &= knights - 1;
+
+                // capture generation has always encoded knight captures without the CAPTURE flag
+                addLegalMoves(board, moves, from, Board.KNIGHT, Board.KNIGHT_ATTACKS[from] & targets,
+                        capturesOnly ? Move.DEFAULT : Move.CAPTURE);
+            }
+
+            // =========================
+            // SLIDERS
+            // =========================
+            long bishops = board.bishops & us;
+
+            while (bishops != 0L) {
+                int from = Long.numberOfTrailingZeros(bishops);
+                bishops &= bishops - 1;
+
+                long movesBB = getBishopAttacks(from, occupancy) & targets;
+                if ((pinned & (1L << from)) != 0L) {
+                    movesBB &= LINE[kingSquare][from];
+                }
+                addLegalMoves(board, moves, from, Board.BISHOP, movesBB, Move.CAPTURE);
+            }
+
+            long rooks = board.rooks & us;
+
+            while (rooks != 0L) {
+                int from = Long.numberOfTrailingZeros(rooks);
+                rooks &= rooks - 1;
+
+                long movesBB = getRookAttacks(from, occupancy) & targets;
+                if ((pinned & (1L << from)) != 0L) {
+                    movesBB &= LINE[kingSquare][from];
+                }
+                addLegalMoves(board, moves, from, Board.ROOK, movesBB, Move.CAPTURE);
+            }
+
+            long queens = board.queens & us;
+
+            while (queens != 0L) {
+                int from = Long.numberOfTrailingZeros(queens);
+                queens &= queens - 1;
+
+                long movesBB = getQueenAttacks(from, occupancy) & targets;
+                if ((pinned & (1L << from)) != 0L) {
+                    movesBB &= LINE[kingSquare][from];
+                }
+                addLegalMoves(board, moves, from, Board.QUEEN, movesBB, Move.CAPTURE);
+            }
+        }
+
+        // =========================
+        // KING
+        // =========================
+        // enemy attacks are computed without our king, so it cannot step back along a checking ray
+        long attacked = info.threats;
+        long kingMoves = Board.KING_ATTACKS[kingSquare] & allowed & ~attacked;
+
+        if (!capturesOnly && checkers == 0L) {
+            if (white) {
+                if ((board.castlingRights & Board.WHITE_KING_SIDE_CASTLING) != 0
+                        && (board.getWhiteRooks() & Board.WHITE_KING_SIDE_ROOK_SQUARE) != 0L
+                        && (Board.WHITE_KING_SIDE_CASTLE_EMPTY_SQUARES_MASK & occupancy) == 0L
+                        && (Board.WHITE_KING_SIDE_CASTLE_NEED_TO_NOT_BE_ATTACKED_MASK & attacked) == 0L) {
+                    kingMoves |= Board.WHITE_KING_SIDE_CASTLE_KING_SQUARE;
+                }
+                if ((board.castlingRights & Board.WHITE_QUEEN_SIDE_CASTLING) != 0
+                        && (board.getWhiteRooks() & Board.WHITE_QUEEN_SIDE_ROOK_SQUARE) != 0L
+                        && (Board.WHITE_QUEEN_SIDE_CASTLE_EMPTY_SQUARES_MASK & occupancy) == 0L
+                        && (Board.WHITE_QUEEN_SIDE_CASTLE_NEED_TO_NOT_BE_ATTACKED_MASK & attacked) == 0L) {
+                    kingMoves |= Board.WHITE_QUEEN_SIDE_CASTLE_KING_SQUARE;
+                }
+            } else {
+                if ((board.castlingRights & Board.BLACK_KING_SIDE_CASTLING) != 0
+                        && (board.getBlackRooks() & Board.BLACK_KING_SIDE_ROOK_SQUARE) != 0L
+                        && (Board.BLACK_KING_SIDE_CASTLE_EMPTY_SQUARES_MASK & occupancy) == 0L
+                        && (Board.BLACK_KING_SIDE_CASTLE_NEED_TO_NOT_BE_ATTACKED_MASK & attacked) == 0L) {
+                    kingMoves |= Board.BLACK_KING_SIDE_CASTLE_KING_SQUARE;
+                }
+                if ((board.castlingRights & Board.BLACK_QUEEN_SIDE_CASTLING) != 0
+                        && (board.getBlackRooks() & Board.BLACK_QUEEN_SIDE_ROOK_SQUARE) != 0L
+                        && (Board.BLACK_QUEEN_SIDE_CASTLE_EMPTY_SQUARES_MASK & occupancy) == 0L
+                        && (Board.BLACK_QUEEN_SIDE_CASTLE_NEED_TO_NOT_BE_ATTACKED_MASK & attacked) == 0L) {
+                    kingMoves |= Board.BLACK_QUEEN_SIDE_CASTLE_KING_SQUARE;
+                }
+            }
+        }
+
+        while (kingMoves != 0L) {
+            int to = Long.numberOfTrailingZeros(kingMoves);
+            kingMoves &= kingMoves - 1;
+
+            int captured = board.getPiece(to);
+            int flag;
+
+            if (Math.abs(kingSquare - to) == 2) {
+                flag = Move.CASTLING;
+            } else if (captured != Board.EMPTY) {
+                flag = Move.CAPTURE;
+            } else {
+                flag = Move.DEFAULT;
+            }
+
+            moves.add(PackedMove.encode(kingSquare, to, Board.KING, captured, 0, flag));
+        }
+    }
+
+    private static void addLegalMoves(Board board, PackedMoveList moves, int from, int piece, long movesBB,
+            int captureFlag) {
+        while (movesBB != 0L) {
+            int to = Long.numberOfTrailingZeros(movesBB);
+            movesBB &= movesBB - 1;
+
+            int captured = board.getPiece(to);
+            moves.add(PackedMove.encode(from, to, piece, captured, 0,
+                    captured != Board.EMPTY ? captureFlag : Move.DEFAULT));
+        }
+    }
+
+    /**
+     * En passant removes two pawns from the same rank, which can expose the king to a slider
+     * even when neither pawn is pinned on its own: check the position after the capture directly.
+     */
+    private static boolean isLegalEnPassant(int from, int to, int kingSquare, long occupancy, long checkers,
+            long theirLeapers, long diagonalSliders, long straightSliders, boolean white) {
+        long capturedPawn = 1L << (white ? to - 8 : to + 8);
+
+        // a knight or a pawn (other than the captured one) giving check is not solved by en passant
+        if ((checkers & theirLeapers & ~capturedPawn) != 0L) {
+            return false;
+        }
+
+        long after = (occupancy ^ (1L << from) ^ capturedPawn) | (1L << to);
+        return (getBishopAttacks(kingSquare, after) & diagonalSliders) == 0L
+                && (getRookAttacks(kingSquare, after) & straightSliders) == 0L;
+    }
+
+    /**
+     * Every square attacked by one side, with sliders seeing through the given occupancy.
+     */
+    public static long attackedSquares(Board board, boolean byWhite, long occupancy) {
+        long attacks = generatePawnMask(board.pawns & (byWhite ? board.whitePieces : board.blackPieces), byWhite);
+        attacks |= generateKnightMask(board.knights & (byWhite ? board.whitePieces : board.blackPieces));
+        attacks |= generateKingMask(board.kings & (byWhite ? board.whitePieces : board.blackPieces));
+
+        long diagonal = (board.bishops | board.queens) & (byWhite ? board.whitePieces : board.blackPieces);
+        while (diagonal != 0L) {
+            attacks |= getBishopAttacks(Long.numberOfTrailingZeros(diagonal), occupancy);
+            diagonal &= diagonal - 1;
+        }
+
+        long straight = (board.rooks | board.queens) & (byWhite ? board.whitePieces : board.blackPieces);
+        while (straight != 0L) {
+            attacks |= getRookAttacks(Long.numberOfTrailingZeros(straight), occupancy);
+            straight &= straight - 1;
+        }
+
+        return attacks;
+    }
 }
@@ -49,6 +49,11 @@ public final class PackedMove {
 
     // ---------- GETTERS ----------
 
+    /** from/to/promotion only (16 bits), enough to find the move again in a move list */
+    public static int toCompact(int move) {
+        return move & 0xFFFF;
+    }
+
     public static int getTo(int move) {
         return (move >>> TO_SHIFT) & MASK_6;
     }
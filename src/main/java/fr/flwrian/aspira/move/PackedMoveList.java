@@ -2,14 +2,18 @@ package fr.flwrian.aspira.move;
 
 public class PackedMoveList {
     public final int[] moves;
+    public final int[] scores; // ordering score of moves[i], set once by the search
     public int size = 0;
+    private int picked = 0;    // moves[0..picked) were already returned by pickNext
 
     public PackedMoveList(int maxSize) {
         this.moves = new int[maxSize];
+        this.scores = new int[maxSize];
     }
 
     public void clear() {
         size = 0;
+        picked = 0;
     }
 
     public void add(int packedMove) {
@@ -28,6 +32,38 @@ public class PackedMoveList {
         return moves;
     }
 
+    public void setScore(int index, int score) {
+        scores[index] = score;
+    }
+
+    /**
+     * Best scored move not returned yet, 0 when all of them were.
+     * One selection sort step: a cutoff after k moves only costs k passes, not a full sort.
+     */
+    public int pickNext() {
+        if (picked >= size) {
+            return 0;
+        }
+
+        int best = picked;
+        for (int i = picked + 1; i < size; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+
+        int move = moves[best];
+        if (best != picked) {
+            moves[best] = moves[picked];
+            moves[picked] = move;
+            int score = scores[best];
+            scores[best] = scores[picked];
+            scores[picked] = score;
+        }
+        picked++;
+        return move;
+    }
+
     public void remove(int index) {
         if (index < 0 || index >= size) return;
         moves[index] = moves[size - 1]; // Swap with last
@@ -0,0 +1,25 @@
+package fr.flwrian.aspira.move;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Build step (exec-maven-plugin, process-classes phase): writes the slider attack table to the class output
+ * directory, so the engine loads it at startup instead of computing it.
+ * Usage: SliderAttacksWriter <classes directory>
+ */
+public final class SliderAttacksWriter {
+
+    private SliderAttacksWriter() {}
+
+    public static void main(String[] args) throws IOException {
+        Path file = Path.of(args[0], MoveGenerator.class.getPackageName().replace('.', '/'), MoveGenerator.SLIDER_ATTACKS_RESOURCE);
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            MoveGenerator.writeSliderAttacks(out);
+        }
+        System.out.println("Slider attacks written to " + file + " (" + Files.size(file) + " bytes)");
+    }
+}
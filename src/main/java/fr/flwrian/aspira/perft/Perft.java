@@ -28,22 +28,13 @@ public class Perft {
             return 1;
         }
 
-        // Bulk counting
-        if (depth == 1) {
-            PackedMoveList moveList = bitBoard.getPseudoLegalMoves(moveLists[depth]);
-            long count = 0;
+        PackedMoveList moveList = bitBoard.getLegalMoves(moveLists[depth]);
 
-            for (int i = 0; i < moveList.size(); i++) {
-                bitBoard.makeMove(moveList.get(i));
-                if (!bitBoard.isKingInCheck(!bitBoard.whiteTurn)) {
-                    count++;
-                }
-                bitBoard.undoMove();
-            }
-            return count;
+        // Bulk counting: the generator only emits legal moves
+        if (depth == 1) {
+            return moveList.size();
         }
 
-        PackedMoveList moveList = bitBoard.getLegalMoves(moveLists[depth]);
         long nodes = 0;
         
         for (int i = 0; i < moveList.size(); i++) {
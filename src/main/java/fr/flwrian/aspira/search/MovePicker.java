@@ -0,0 +1,130 @@
+package fr.flwrian.aspira.search;
+
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+import fr.flwrian.aspira.move.PackedMove;
+import fr.flwrian.aspira.move.PackedMoveList;
+
+/**
+ * Staged move picker for the main search: hash move, captures (MVV-LVA), killers, quiets (history).
+ * Nothing is generated before it is needed, so a cutoff on the hash move or on a capture
+ * skips the quiet generation and sorting entirely.
+ *
+ * The hash move and the killers come from other positions: they are checked with
+ * Board.isPseudoLegal / isLegal when their stage is reached. Generated moves are already legal.
+ */
+final class MovePicker {
+
+    private static final int TT_MOVE = 0;
+    private static final int GEN_CAPTURES = 1;
+    private static final int CAPTURES = 2;
+    private static final int KILLERS = 3;
+    private static final int GEN_QUIETS = 4;
+    private static final int QUIETS = 5;
+    private static final int DONE = 6;
+
+    private final PackedMoveList moves = new PackedMoveList(218);
+
+    private Board board;
+    private int[][] history;
+    private int[] killers;
+
+    private int stage;
+    private int index;      // next killer to try
+    private int ttMove;     // full move, 0 if none or not legal here
+    private int killer1;    // killers actually played, skipped again in the quiets
+    private int killer2;
+
+    /**
+     * @param ttCompact move from the transposition table (PackedMove.toCompact), 0 if none
+     * @param killers killer moves of this ply
+     * @param history history table of the side to move, [from][to]
+     */
+    void init(Board board, int ttCompact, int[] killers, int[][] history) {
+        this.board = board;
+        this.killers = killers;
+        this.history = history;
+        this.stage = TT_MOVE;
+        this.killer1 = 0;
+        this.killer2 = 0;
+
+        int move = ttCompact != 0 ? MoveGenerator.decodeCompactMove(board, ttCompact) : 0;
+        this.ttMove = isLegal(move) ? move : 0;
+    }
+
+    /** Next move to search, 0 when every move has been returned. */
+    int next() {
+        int move;
+
+        switch (stage) {
+            case TT_MOVE:
+                stage = GEN_CAPTURES;
+                if (ttMove != 0) {
+                    return ttMove;
+                }
+                // fall through
+            case GEN_CAPTURES:
+                MoveGenerator.generateLegalCaptureMoves(board, moves);
+                scoreCaptures();
+                stage = CAPTURES;
+                // fall through
+            case CAPTURES:
+                while ((move = moves.pickNext()) != 0) {
+                    if (!isTTMove(move)) {
+                        return move;
+                    }
+                }
+                index = 0;
+                stage = KILLERS;
+                // fall through
+            case KILLERS:
+                while (index < killers.length) {
+                    int killer = killers[index++];
+                    if (killer != 0 && !PackedMove.isCapture(killer) && !isTTMove(killer) && isLegal(killer)) {
+                        if (killer1 == 0) killer1 = killer; else killer2 = killer;
+                        return killer;
+                    }
+                }
+                stage = GEN_QUIETS;
+                // fall through
+            case GEN_QUIETS:
+                MoveGenerator.generateLegalQuietMoves(board, moves);
+                scoreQuiets();
+                stage = QUIETS;
+                // fall through
+            case QUIETS:
+                while ((move = moves.pickNext()) != 0) {
+                    if (!isTTMove(move) && move != killer1 && move != killer2) {
+                        return move;
+                    }
+                }
+                stage = DONE;
+                // fall through
+            default:
+                return 0;
+        }
+    }
+
+    // Generated moves may differ from the hash move in the flags (capture generation), compare from/to/promotion
+    private boolean isTTMove(int move) {
+        return ttMove != 0 && PackedMove.toCompact(move) == PackedMove.toCompact(ttMove);
+    }
+
+    private boolean isLegal(int move) {
+        return board.isPseudoLegal(move) && board.isLegal(move);
+    }
+
+    private void scoreCaptures() {
+        int[] m = moves.moves;
+        for (int i = 0; i < moves.size(); i++) {
+            moves.setScore(i, Search.mvvLva[PackedMove.getCaptured(m[i])][PackedMove.getPieceFrom(m[i])]);
+        }
+    }
+
+    private void scoreQuiets() {
+        int[] m = moves.moves;
+        for (int i = 0; i < moves.size(); i++) {
+            moves.setScore(i, history[PackedMove.getFrom(m[i])][PackedMove.getTo(m[i])]);
+        }
+    }
+}
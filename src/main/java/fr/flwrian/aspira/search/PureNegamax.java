@@ -1,5 +1,7 @@
 package fr.flwrian.aspira.search;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Locale;
 
 import fr.flwrian.aspira.board.Board;
@@ -159,8 +161,28 @@ public class PureNegamax implements SearchAlgorithm {
         // Pas de hash table
     }
 
+    @Override
+    public void clearHashTableLazily() {
+        // Pas de hash table
+    }
+
     @Override
     public void setHashTable(int sizeMB) {
         // Pas de hash table
     }
+
+    @Override
+    public void saveHashTable(Path file) throws IOException {
+        throw new IOException("No hash table in " + getName());
+    }
+
+    @Override
+    public void loadHashTable(Path file) throws IOException {
+        throw new IOException("No hash table in " + getName());
+    }
+
+    @Override
+    public void setThreads(int threads) {
+        // Single threaded
+    }
 }
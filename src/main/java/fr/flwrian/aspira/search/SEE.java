@@ -1,5 +1,6 @@
 package fr.flwrian.aspira.search;
 
+import fr.flwrian.aspira.board.AttackInfo;
 import fr.flwrian.aspira.board.Board;
 import fr.flwrian.aspira.move.Move;
 import fr.flwrian.aspira.move.MoveGenerator;
@@ -69,18 +70,40 @@ public final class SEE {
         balance -= SEE_PIECE_VALUES[nextVictim];
         if (balance >= 0) return true;
 
-        long bishops = b.whiteBishops | b.blackBishops | b.whiteQueens | b.blackQueens;
-        long rooks   = b.whiteRooks   | b.blackRooks   | b.whiteQueens | b.blackQueens;
+        long bishops = b.bishops | b.queens;
+        long rooks   = b.rooks   | b.queens;
 
-        long occupied = b.bitboard;
+        // first exchange from the attack info of the position (shared with the generators)
+        final AttackInfo info = b.getAttackInfo();
+        final long toBB = 1L << to;
+        final long them = b.whiteTurn ? b.blackPieces : b.whitePieces;
+
+        // no recapture: the enemy does not attack the square, and no enemy slider stands behind the piece we move
+        if (!isEnPassant && (info.threats & toBB) == 0L
+                && (MoveGenerator.LINE[to][from] & (bishops | rooks) & them) == 0L) {
+            return true;
+        }
+
+        // our pinned pieces can only take back along their pin line
+        long pinnedOff = 0L;
+        if (info.pinned != 0L) {
+            int kingSquare = Long.numberOfTrailingZeros(b.kings & ~them);
+            for (long pinned = info.pinned; pinned != 0L; pinned &= pinned - 1) {
+                if ((MoveGenerator.LINE[kingSquare][Long.numberOfTrailingZeros(pinned)] & toBB) == 0L) {
+                    pinnedOff |= pinned & -pinned;
+                }
+            }
+        }
+
+        long occupied = b.getBoard();
         occupied ^= (1L << from);
-        occupied |= (1L << to);
+        occupied |= toBB;
         if (isEnPassant) occupied ^= b.enPassantSquare;
 
         long attackers =
                 (squareAttackedBy(b, to, true,  occupied)
                | squareAttackedBy(b, to, false, occupied))
-               & occupied;
+               & occupied & ~pinnedOff;
 
         boolean side = !b.whiteTurn;
 
@@ -105,7 +128,7 @@ public final class SEE {
             if (nextVictim >= Board.ROOK)
                 attackers |= MoveGenerator.getRookAttacks(to, occupied) & rooks;
 
-            attackers &= occupied;
+            attackers &= occupied & ~pinnedOff;
             side = !side;
 
             balance = -balance - 1 - SEE_PIECE_VALUES[nextVictim];
@@ -116,44 +139,32 @@ public final class SEE {
     }
 
     static long pieceBitboard(Board b, boolean white, int piece) {
-        if (white) {
-            return switch (piece) {
-                case Board.PAWN -> b.whitePawns;
-                case Board.KNIGHT -> b.whiteKnights;
-                case Board.BISHOP -> b.whiteBishops;
-                case Board.ROOK -> b.whiteRooks;
-                case Board.QUEEN -> b.whiteQueens;
-                case Board.KING -> b.whiteKing;
-                default -> 0L;
-            };
-        } else {
-            return switch (piece) {
-                case Board.PAWN -> b.blackPawns;
-                case Board.KNIGHT -> b.blackKnights;
-                case Board.BISHOP -> b.blackBishops;
-                case Board.ROOK -> b.blackRooks;
-                case Board.QUEEN -> b.blackQueens;
-                case Board.KING -> b.blackKing;
-                default -> 0L;
-            };
-        }
+        long type = switch (piece) {
+            case Board.PAWN -> b.pawns;
+            case Board.KNIGHT -> b.knights;
+            case Board.BISHOP -> b.bishops;
+            case Board.ROOK -> b.rooks;
+            case Board.QUEEN -> b.queens;
+            case Board.KING -> b.kings;
+            default -> 0L;
+        };
+        return type & (white ? b.whitePieces : b.blackPieces);
     }
 
     static long squareAttackedBy(Board b, int sq, boolean white, long occ) {
         long attacks = 0L;
+        long us = white ? b.whitePieces : b.blackPieces;
 
         attacks |= (white ? WHITE_PAWN_ATTACKERS[sq] : BLACK_PAWN_ATTACKERS[sq])
-                & (white ? b.whitePawns : b.blackPawns);
+                & b.pawns & us;
 
-        attacks |= Board.KNIGHT_ATTACKS[sq] & (white ? b.whiteKnights : b.blackKnights);
-        attacks |= Board.KING_ATTACKS[sq]   & (white ? b.whiteKing   : b.blackKing);
+        attacks |= Board.KNIGHT_ATTACKS[sq] & b.knights & us;
+        attacks |= Board.KING_ATTACKS[sq]   & b.kings & us;
 
-        long bishops = white ? (b.whiteBishops | b.whiteQueens)
-                             : (b.blackBishops | b.blackQueens);
+        long bishops = (b.bishops | b.queens) & us;
         attacks |= MoveGenerator.getBishopAttacks(sq, occ) & bishops;
 
-        long rooks = white ? (b.whiteRooks | b.whiteQueens)
-                           : (b.blackRooks | b.blackQueens);
+        long rooks = (b.rooks | b.queens) & us;
         attacks |= MoveGenerator.getRookAttacks(sq, occ) & rooks;
 
         return attacks;
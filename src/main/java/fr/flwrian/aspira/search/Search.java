@@ -1,5 +1,7 @@
 package fr.flwrian.aspira.search;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Locale;
 
 import fr.flwrian.aspira.board.Board;
@@ -20,19 +22,47 @@ public class Search implements SearchAlgorithm {
     static final int VALUE_MATE_IN_PLY = MATE - MAX_PLY;
     static final int VALUE_MATED_IN_PLY = -VALUE_MATE_IN_PLY;
 
-    private static final PackedMoveList[] moveLists = new PackedMoveList[MAX_PLY];
+    // Per-thread move list stack (one list per ply)
+    private final PackedMoveList[] moveLists = new PackedMoveList[MAX_PLY];
 
-    static {
-        // Init stack movelist
-        System.out.println("Initializing move lists...");
+    // Per-thread staged move pickers for absearch (one per ply)
+    private final MovePicker[] movePickers = new MovePicker[MAX_PLY];
+
+    {
         for (int i = 0; i < MAX_PLY; i++){
             moveLists[i] = new PackedMoveList(218);
+            movePickers[i] = new MovePicker();
         }
     }
 
     final int CHECK_RATE = 256;
     final int INFINITE_VALUE = 32001;
 
+    // === Lazy SMP ===
+    // The main thread owns the helpers. Every helper has its own board copy, move lists,
+    // killers and history, only the transposition table is shared.
+    // A helper keeps its thread between searches, parked in idleLoop until the next one.
+    int threads = 1;
+    Search[] helpers = new Search[0];
+    final boolean mainThread;
+    final int threadId;
+    final Board threadBoard;
+
+    // Helper state, guarded by the helper itself
+    Thread thread;
+    boolean searching = false;
+    boolean exit = false;
+    int depthLimit;
+
+    // Result of the last completed iteration of this thread, kept apart from the PV table
+    // that the next iteration overwrites
+    int completedDepth = 0;
+    int completedSeldepth = 0;
+    int completedScore = 0;
+    int completedMove = 0;
+    int completedPvLength = 0;
+    final int[] completedPv = new int[MAX_PLY];
+
     int[] pvLengths = new int[MAX_PLY];
     int[][] principalVariations = new int[MAX_PLY][MAX_PLY];
 
@@ -41,7 +71,7 @@ public class Search implements SearchAlgorithm {
     long nodes = 0;
     long lastNps = 0;
     int seldepth = 0;
-    boolean stopSearch = false;
+    volatile boolean stopSearch = false;
     int checks = CHECK_RATE;
 
     long nodeLimit = 0;
@@ -53,7 +83,22 @@ public class Search implements SearchAlgorithm {
     // Indexed by [color][from][to]
     int[][][] historyTable = new int[2][64][64];
 
-    public TranspositionTable transpositionTable = new TranspositionTable(64);
+    public TranspositionTable transpositionTable;
+
+    public Search() {
+        this.mainThread = true;
+        this.threadId = 0;
+        this.threadBoard = null;
+        this.transpositionTable = new TranspositionTable(64);
+    }
+
+    // Helper thread constructor
+    private Search(int threadId, TranspositionTable transpositionTable) {
+        this.mainThread = false;
+        this.threadId = threadId;
+        this.threadBoard = new Board();
+        this.transpositionTable = transpositionTable;
+    }
 
     public int qsearch(Board board, int alpha, int beta, int ply) {
         
@@ -79,23 +124,24 @@ public class Search implements SearchAlgorithm {
         }
 
         PackedMoveList moves = board.getCaptureMoves(moveLists[ply]);
-        orderQMoves(moves);
-        for (int i = 0; i < moves.size(); i++) {
+        scoreQMoves(moves);
+        int move;
+        while ((move = moves.pickNext()) != 0) {
             nodes++;
 
             // SEE pruning
-            // if (!SEE.staticExchangeEvaluation(board, moves.get(i), -100)) {
+            // if (!SEE.staticExchangeEvaluation(board, move, -100)) {
             //     continue;
             // }
 
-            int capturedPiece = PackedMove.getCaptured(moves.get(i));
+            int capturedPiece = PackedMove.getCaptured(move);
 
             // Delta pruning
-            if (Board.PIECE_SCORES[capturedPiece] + 400 + bestValue < alpha && !PackedMove.isPromotion(moves.get(i))) {
+            if (Board.PIECE_SCORES[capturedPiece] + 400 + bestValue < alpha && !PackedMove.isPromotion(move)) {
                 continue;
             }
 
-            board.makeMove(moves.get(i));
+            board.makeMove(move);
             int score = -qsearch(board, -beta, -alpha, ply + 1);
             board.undoMove();
 
@@ -134,7 +180,12 @@ public class Search implements SearchAlgorithm {
 
         if (!rootNode) {
             if (board.isThreefoldRepetition()) {
-                return -5;
+                return DRAW;
+            }
+
+            // fifty-move rule, unless the last move of the 100 gave mate
+            if (board.isFiftyMoveRule() && !board.isCheckMate(moveLists[ply])) {
+                return DRAW;
             }
 
             // Mate distance pruning
@@ -145,20 +196,29 @@ public class Search implements SearchAlgorithm {
             }
         }
 
+        // a move back to a position of the search path is available: the line is at least a draw
+        if (!rootNode && alpha < DRAW && board.hasUpcomingRepetition(ply)) {
+            alpha = DRAW;
+            if (alpha >= beta) {
+                return alpha;
+            }
+        }
+
         if (depth <= 0) {
             return qsearch(board, alpha, beta, ply);
         }
 
         // TT probe
-        TranspositionTable.Entry tte = transpositionTable.get(hashKey);
-        boolean ttHit = (tte != null);
-        int ttMove = ttHit ? tte.bestMove : 0;
-        int ttScore = ttHit ? scoreFromTT(tte.value, ply) : 0;
-
-        if (!rootNode && ttHit && tte.depth >= depth) {
-            if (tte.flag == TranspositionTable.Entry.LOWERBOUND) {
+        long tte = transpositionTable.probe(hashKey);
+        boolean ttHit = TranspositionTable.isHit(tte);
+        int ttMove = ttHit ? TranspositionTable.move(tte) : 0;
+        int ttScore = ttHit ? scoreFromTT(TranspositionTable.value(tte), ply) : 0;
+
+        if (!rootNode && ttHit && TranspositionTable.depth(tte) >= depth) {
+            int ttFlag = TranspositionTable.flag(tte);
+            if (ttFlag == TranspositionTable.Entry.LOWERBOUND) {
                 alpha = Math.max(alpha, ttScore);
-            } else if (tte.flag == TranspositionTable.Entry.UPPERBOUND) {
+            } else if (ttFlag == TranspositionTable.Entry.UPPERBOUND) {
                 beta = Math.min(beta, ttScore);
             }
 
@@ -190,8 +250,9 @@ public class Search implements SearchAlgorithm {
 
         int madeMoves = 0;
 
-        PackedMoveList moves = board.getLegalMoves(moveLists[ply]);
-        orderMoves(moves, ttMove, board, ply);
+        // TT move, captures, killers, then quiets: each stage is generated only when reached
+        MovePicker picker = movePickers[ply];
+        picker.init(board, ttMove, killermoves[ply], historyTable[board.whiteTurn ? 0 : 1]);
 
 
         // final int LMR_REDUCTION = 1;
@@ -200,26 +261,26 @@ public class Search implements SearchAlgorithm {
 
         final boolean criticalDepth = (depth <= 2);
 
-        for (int i = 0; i < moves.size(); i++) {
-            int move = moves.get(i);
+        int move;
+        while ((move = picker.next()) != 0) {
             madeMoves++;
             nodes++;
 
-            board.makeMove(move);
-            boolean givesCheck = board.isKingInCheck(!board.whiteTurn);
+            // decided on the current position, before the move is made
             boolean isCapture = PackedMove.isCapture(move);
             boolean isPVNode = (beta - alpha > 1);
             int reduction = 0;
-            int extensions = givesCheck ? 1 : 0;
 
-            if (!criticalDepth && !inCheck && !givesCheck && !isCapture && !PackedMove.isPromotion(move)) {
+            if (!criticalDepth && !inCheck && !isCapture && !PackedMove.isPromotion(move)) {
                 reduction = calculateReduction(depth, madeMoves, isPVNode);
             }
 
 
-            int searchDepth = Math.max(depth - 1 - reduction, 0) + extensions;
+            int searchDepth = Math.max(depth - 1 - reduction, 0);
             int score;
 
+            board.makeMove(move);
+
             if (madeMoves == 1) {
                 // full search pv
                 score = -absearch(board, searchDepth, -beta, -alpha, ply + 1);
@@ -347,9 +408,17 @@ public class Search implements SearchAlgorithm {
         nodes = 0;
         int score = 0;
         int bestMove = 0;
+        completedDepth = 0;
+        completedSeldepth = 0;
+        completedScore = 0;
+        completedMove = 0;
+        completedPvLength = 0;
         startTime = System.nanoTime();
+
+        // Half of the helpers skip depth 1 so the threads don't all search the same iteration
+        int startDepth = mainThread ? 1 : 1 + (threadId & 1);
         
-        for (int depth = 1; depth <= depthLimit; depth++) {
+        for (int depth = startDepth; depth <= depthLimit; depth++) {
             
             seldepth = 0;
             int alpha, beta;
@@ -402,16 +471,26 @@ public class Search implements SearchAlgorithm {
             }
         
             bestMove = principalVariations[0][0];
-            long endTime = System.nanoTime();
-            printSearchInfo(depth, score, nodes, endTime - startTime);
+            completedDepth = depth;
+            completedSeldepth = seldepth;
+            completedScore = score;
+            completedMove = bestMove;
+            completedPvLength = pvLengths[0];
+            System.arraycopy(principalVariations[0], 0, completedPv, 0, completedPvLength);
+
+            if (mainThread) {
+                long endTime = System.nanoTime();
+                printSearchInfo(this, totalNodes(), endTime - startTime);
+            }
         }
 
         // Last attempt to get best move
         if (bestMove == 0) {
-            bestMove = principalVariations[0][0];
+            completedMove = principalVariations[0][0];
         }
+    }
 
-        Move best = PackedMove.unpack(bestMove);
+    private void printBestMove(Move best) {
         // print hash history (board.history.stack[].zobristKey)
         // String[] hashHistory = new String[board.history.size() + 1];
         // for (int i = 0; i < board.history.size() + 1; i++) {
@@ -443,6 +522,12 @@ public class Search implements SearchAlgorithm {
 
         checks = CHECK_RATE;
 
+        // node limit over every thread: the helpers have none, the main thread stops them
+        if (nodeLimit != 0 && helpers.length > 0 && totalNodes() >= nodeLimit) {
+            stopSearch = true;
+            return true;
+        }
+
         if (timeLimit == 0) {
             return false;
         }
@@ -459,8 +544,8 @@ public class Search implements SearchAlgorithm {
 
     public String getPV(){
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < pvLengths[0]; i++) {
-            Move move = PackedMove.unpack(principalVariations[0][i]);
+        for (int i = 0; i < completedPvLength; i++) {
+            Move move = PackedMove.unpack(completedPv[i]);
             sb.append(move.toString()).append(" ");
         }
         return sb.toString().trim();
@@ -502,13 +587,15 @@ public class Search implements SearchAlgorithm {
     }
 
 
-    private void printSearchInfo(int depth, int score, long nodes, long durationNanos) {
+    // Last completed iteration of thread (this one or a helper), nodes and time over the whole search
+    private void printSearchInfo(Search thread, long nodes, long durationNanos) {
         double timeMs = durationNanos / 1_000_000.0;
         double rawNps = nodes / (durationNanos / 1_000_000_000.0);
         lastNps = (long) rawNps;
 
         System.out.printf(Locale.US, "info depth %d seldepth %d score %s nodes %d nps %d time %.0f hashfull %d pv %s\n",
-                depth, seldepth, convertScore(score), nodes, lastNps, timeMs, this.transpositionTable.hashfull(), getPV());
+                thread.completedDepth, thread.completedSeldepth, convertScore(thread.completedScore), nodes, lastNps, timeMs,
+                this.transpositionTable.hashfull(), thread.getPV());
     }
 
     @Override
@@ -567,120 +654,11 @@ public class Search implements SearchAlgorithm {
         return score;
     }
 
-    /**
-     * Orders moves in the following order:
-     * 1️ -> Transposition table move
-     * 2️ -> Captures (MVV-LVA)
-     * 3️ -> Quiets (History heuristic)
-     * @param moves
-     * @param ttMove
-     * @param board
-     */
-    public void orderMoves(PackedMoveList moves, int ttMove, Board board, int ply) {
-        int size = moves.size();
+    // Scored once, the qsearch loop picks them best first with pickNext
+    public void scoreQMoves(PackedMoveList moves) {
         int[] m = moves.moves;
-
-        int idx = 0;
-
-        // 1) TT move
-        if (ttMove != 0) {
-            for (int i = 0; i < size; i++) {
-                if (m[i] == ttMove) {
-                    swap(m, idx++, i);
-                    break;
-                }
-            }
-        }
-
-        // 2) Captures
-        int captureStart = idx;
-        for (int i = idx; i < size; i++) {
-            if (PackedMove.isCapture(m[i])) {
-                swap(m, idx++, i);
-            }
-        }
-        sortCaptures(m, captureStart, idx);
-
-        // 3) Killers
-        for (int k = 0; k < 2; k++) {
-            int killer = killermoves[ply][k];
-            if (killer == 0) continue;
-            if (killer == ttMove) continue;
-
-            for (int i = idx; i < size; i++) {
-                if (m[i] == killer) {
-                    swap(m, idx++, i);
-                    break;
-                }
-            }
-        }
-
-        // 4) Remaining quiets (history)
-        sortQuiets(m, idx, size, board);
-    }
-    
-
-
-    private static void swap(int[] arr, int a, int b) {
-        int tmp = arr[a];
-        arr[a] = arr[b];
-        arr[b] = tmp;
-    }
-
-    private void sortCaptures(int[] m, int from, int to) {
-        for (int i = from + 1; i < to; i++) {
-            int move = m[i];
-            int score = scoreQMove(move);
-            int j = i - 1;
-
-            while (j >= from && scoreQMove(m[j]) < score) {
-                m[j + 1] = m[j];
-                j--;
-            }
-            m[j + 1] = move;
-        }
-    }
-    
-    private void sortQuiets(int[] m, int from, int to, Board board) {
-        int color = board.whiteTurn ? 0 : 1;
-
-        for (int i = from + 1; i < to; i++) {
-            int move = m[i];
-            int fromSq = PackedMove.getFrom(move);
-            int toSq = PackedMove.getTo(move);
-            int score = historyTable[color][fromSq][toSq];
-
-            int j = i - 1;
-            while (j >= from) {
-                int m2 = m[j];
-                int s2 = historyTable[color]
-                        [PackedMove.getFrom(m2)]
-                        [PackedMove.getTo(m2)];
-
-                if (s2 >= score) break;
-
-                m[j + 1] = m[j];
-                j--;
-            }
-            m[j + 1] = move;
-        }
-    }
-
-
-    public void orderQMoves(PackedMoveList moves) {
-        int size = moves.size();
-        int[] m = moves.moves;
-
-        for (int i = 1; i < size; i++) {
-            int move = m[i];
-            int score = scoreQMove(move);
-            int j = i - 1;
-
-            while (j >= 0 && scoreQMove(m[j]) < score) {
-                m[j + 1] = m[j];
-                j--;
-            }
-            m[j + 1] = move;
+        for (int i = 0; i < moves.size(); i++) {
+            moves.setScore(i, scoreQMove(m[i]));
         }
     }
 
@@ -709,8 +687,118 @@ public class Search implements SearchAlgorithm {
             timeLimit = (long) (timePerMoveMs * 0.9 * 1_000_000L);
         }
         
+        transpositionTable.newSearch();
+        startHelpers(board, depth);
         iterativeDeepening(board, depth);
-        return PackedMove.unpack(principalVariations[0][0]);
+        stopHelpers();
+
+        // a deeper helper gives the move: report its line, so the last info matches bestmove
+        Search bestThread = bestThread();
+        if (bestThread != this) {
+            printSearchInfo(bestThread, totalNodes(), System.nanoTime() - startTime);
+        }
+
+        Move best = PackedMove.unpack(bestThread.completedMove);
+        printBestMove(best);
+        return best;
+    }
+
+    private void startHelpers(Board board, int depthLimit) {
+        for (Search helper : helpers) {
+            helper.startSearching(board, depthLimit);
+        }
+    }
+
+    private void stopHelpers() {
+        for (Search helper : helpers) {
+            helper.stopSearch = true;
+        }
+        for (Search helper : helpers) {
+            helper.waitForSearchFinished();
+        }
+    }
+
+    // Called by the main thread: set up the helper for a search and wake its thread
+    private synchronized void startSearching(Board board, int depthLimit) {
+        threadBoard.copyFrom(board);
+        this.depthLimit = depthLimit;
+        nodes = 0;
+        stopSearch = false;
+        checks = CHECK_RATE;
+        nodeLimit = 0;
+        timeLimit = 0;
+        resetSearch();
+
+        searching = true;
+        notifyAll();
+    }
+
+    private synchronized void waitForSearchFinished() {
+        while (searching) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Helper thread body: parked until the main thread hands it a search, until exit
+    private void idleLoop() {
+        while (true) {
+            synchronized (this) {
+                while (!searching && !exit) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (exit) {
+                    return;
+                }
+            }
+
+            iterativeDeepening(threadBoard, depthLimit);
+
+            synchronized (this) {
+                searching = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private void exitThread() {
+        synchronized (this) {
+            exit = true;
+            stopSearch = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Deepest completed iteration wins, the main thread wins ties
+    private Search bestThread() {
+        Search best = this;
+        for (Search helper : helpers) {
+            if (helper.completedMove != 0 && helper.completedDepth > best.completedDepth) {
+                best = helper;
+            }
+        }
+        return best;
+    }
+
+    private long totalNodes() {
+        long total = nodes;
+        for (Search helper : helpers) {
+            total += helper.nodes;
+        }
+        return total;
     }
 
     @Override
@@ -725,7 +813,7 @@ public class Search implements SearchAlgorithm {
 
     @Override
     public long getLastNodeCount() {
-        return nodes;
+        return totalNodes();
     }
 
     @Override
@@ -738,10 +826,56 @@ public class Search implements SearchAlgorithm {
         transpositionTable.flush();
     }
 
+    @Override
+    public void clearHashTableLazily() {
+        transpositionTable.clearLazily();
+    }
+
     @Override
     public void setHashTable(int sizeMB) {
+        // Drop every reference to the old table first: its off-heap memory is only
+        // released once it is collected, and the direct buffer allocation below collects
+        // and retries on its own when it hits MaxDirectMemorySize
         this.transpositionTable = null;
+        for (Search helper : helpers) {
+            helper.transpositionTable = null;
+        }
+
         this.transpositionTable = new TranspositionTable(sizeMB);
+        for (Search helper : helpers) {
+            helper.transpositionTable = transpositionTable;
+        }
+    }
+
+    @Override
+    public void saveHashTable(Path file) throws IOException {
+        transpositionTable.save(file);
+    }
+
+    @Override
+    public void loadHashTable(Path file) throws IOException {
+        TranspositionTable loaded = TranspositionTable.load(file);
+        this.transpositionTable = loaded;
+        for (Search helper : helpers) {
+            helper.transpositionTable = loaded;
+        }
+    }
+
+    @Override
+    public void setThreads(int threads) {
+        for (Search helper : helpers) {
+            helper.exitThread();
+        }
+
+        this.threads = Math.max(1, threads);
+        helpers = new Search[this.threads - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            Search helper = new Search(i + 1, transpositionTable);
+            helper.thread = new Thread(helper::idleLoop, "Search-" + helper.threadId);
+            helper.thread.setDaemon(true);
+            helper.thread.start();
+            helpers[i] = helper;
+        }
     }
 
 
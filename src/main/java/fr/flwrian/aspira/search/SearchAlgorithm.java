@@ -1,5 +1,8 @@
 package fr.flwrian.aspira.search;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 import fr.flwrian.aspira.board.Board;
 import fr.flwrian.aspira.move.Move;
 
@@ -19,7 +22,15 @@ public interface SearchAlgorithm {
 
     public void flushHashTable();
 
+    public void clearHashTableLazily();
+
     public void setHashTable(int sizeMB);
 
+    public void saveHashTable(Path file) throws IOException;
+
+    public void loadHashTable(Path file) throws IOException;
+
+    public void setThreads(int threads);
+
     public void resetSearch();
 }
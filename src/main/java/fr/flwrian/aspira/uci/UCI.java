@@ -1,5 +1,7 @@
 package fr.flwrian.aspira.uci;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 
 import fr.flwrian.aspira.bench.BenchRunner;
@@ -25,11 +27,14 @@ public class UCI {
 
     private static final int HASH_TABLE_MIN_SIZE_MB = 8;
     private static final int HASH_TABLE_DEFAULT_SIZE_MB = 64;
-    private static final int HASH_TABLE_MAX_SIZE_MB = 1024;
+    private static final int HASH_TABLE_MAX_SIZE_MB = 131072;
 
     private static final int THREADS_MIN = 1;
     private static final int THREADS_DEFAULT = 1;
-    private static final int THREADS_MAX = 1;
+    private static final int THREADS_MAX = 256;
+
+    // ucinewgame: zero the hash table (default) or just retire its entries by generation
+    private static boolean lazyHashClear = false;
 
     private static String STARTING_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
 
@@ -40,15 +45,19 @@ public class UCI {
 
     public static void main(String[] args) {
 
+        // init movegenerator (attack table read from the build resource)
+        MoveGenerator.initSlidingAttacks();
+
         searchAlgorithm = new Search();
         engine.setSearchAlgorithm(searchAlgorithm);
 
         board.loadFromFen(STARTING_POSITION);
 
-        // init movegenerator
-        MoveGenerator.initSlidingAttacks();
-
-        if (args.length == 1 && args[0].equals("bench")) {
+        // bench [threads]
+        if (args.length >= 1 && args[0].equals("bench")) {
+            if (args.length > 1) {
+                searchAlgorithm.setThreads(Integer.parseInt(args[1]));
+            }
             BenchRunner.run(engine, board);
             System.exit(0);
         }
@@ -94,6 +103,9 @@ public class UCI {
                 case "help":
                     help();
                     break;
+                case "hash":
+                    hash(inputArray);
+                    break;
                 default:
                     break;
             }
@@ -117,24 +129,60 @@ public class UCI {
                     System.out.println("info string Hash size must be between " + HASH_TABLE_MIN_SIZE_MB + " and " + HASH_TABLE_MAX_SIZE_MB + " MB");
                     return;
                 }
-                searchAlgorithm.setHashTable(sizeMB);
+                try {
+                    searchAlgorithm.setHashTable(sizeMB);
+                } catch (OutOfMemoryError e) {
+                    // Off-heap memory is capped by -XX:MaxDirectMemorySize
+                    System.out.println("info string Could not allocate " + sizeMB + " MB of hash, using " + HASH_TABLE_DEFAULT_SIZE_MB + " MB");
+                    searchAlgorithm.setHashTable(HASH_TABLE_DEFAULT_SIZE_MB);
+                }
                 break;
 
-            // Currently only 1 thread is supported
             case "Threads":
                 int threads = Integer.parseInt(value);
                 if (threads < THREADS_MIN || threads > THREADS_MAX) {
                     System.out.println("info string Threads must be between " + THREADS_MIN + " and " + THREADS_MAX);
                     return;
                 }
-                // searchAlgorithm.setThreads(threads);
+                searchAlgorithm.setThreads(threads);
                 System.out.println("info string Using " + threads + " threads");
                 break;
+
+            case "LazyHashClear":
+                lazyHashClear = Boolean.parseBoolean(value);
+                break;
             default:
                 break;
         }
     }
 
+    // hash save <file> / hash load <file>
+    private static void hash(String[] inputArray) {
+        if (inputArray.length < 3) {
+            System.out.println("info string Usage: hash save <file> | hash load <file>");
+            return;
+        }
+
+        Path file = Path.of(String.join(" ", Arrays.copyOfRange(inputArray, 2, inputArray.length)));
+        try {
+            switch (inputArray[1]) {
+                case "save":
+                    searchAlgorithm.saveHashTable(file);
+                    System.out.println("info string Hash saved to " + file);
+                    break;
+                case "load":
+                    searchAlgorithm.loadHashTable(file);
+                    System.out.println("info string Hash loaded from " + file);
+                    break;
+                default:
+                    System.out.println("info string Usage: hash save <file> | hash load <file>");
+                    break;
+            }
+        } catch (IOException e) {
+            System.out.println("info string Could not " + inputArray[1] + " hash: " + e.getMessage());
+        }
+    }
+
     private static void help() {
         System.out.println("""
                  _______________________________________________________________________________________
@@ -182,6 +230,10 @@ public class UCI {
                   perft-test <threads>
                       Run perft test suite from standard.epd.
 
+                  hash save <file>
+                  hash load <file>
+                      Save the hash table to a file / load it back (replaces the current one).
+
                   d
                       Display the current board state.
 
@@ -314,7 +366,11 @@ public class UCI {
 
     private static void uciNewGame() {
         searchAlgorithm.resetSearch();
-        searchAlgorithm.flushHashTable();
+        if (lazyHashClear) {
+            searchAlgorithm.clearHashTableLazily();
+        } else {
+            searchAlgorithm.flushHashTable();
+        }
         board = new Board();
         board.loadFromFen(STARTING_POSITION);
     }
@@ -328,7 +384,8 @@ public class UCI {
         System.out.println("id author " + AUTHOR);
         System.out.println("id version " + VERSION);
         System.out.println("option name Hash type spin default " + HASH_TABLE_DEFAULT_SIZE_MB + " min " + HASH_TABLE_MIN_SIZE_MB + " max " + HASH_TABLE_MAX_SIZE_MB);
-        System.out.println("option name Threads type spin default 1 min 1 max 1");
+        System.out.println("option name Threads type spin default " + THREADS_DEFAULT + " min " + THREADS_MIN + " max " + THREADS_MAX);
+        System.out.println("option name LazyHashClear type check default " + lazyHashClear);
         System.out.println();
         System.out.println("uciok");
     }
@@ -0,0 +1,76 @@
+package aspira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+import fr.flwrian.aspira.move.PackedMove;
+import fr.flwrian.aspira.move.PackedMoveList;
+
+public class BoardKeysTest {
+
+    static final int GAMES = 4;
+    static final int PLIES = 60;
+
+    static void assertKeys(Board board, String context) {
+        assertEquals("zobrist " + context, board.generateZobristKey(), board.zobristKey);
+        assertEquals("pawn " + context, board.generatePawnKey(), board.pawnKey);
+        assertEquals("material " + context, board.generateMaterialKey(), board.materialKey);
+    }
+
+    // Incremental keys must match the keys recomputed from scratch after every move and every undo
+    @Test
+    public void testIncrementalKeys() throws IOException {
+        MoveGenerator.initSlidingAttacks();
+        Random random = new Random(19);
+        PackedMoveList moves = new PackedMoveList(256);
+
+        for (String line : Files.readAllLines(Path.of("perft-suite/standard.epd"))) {
+            Board board = new Board();
+            board.loadFromFen(line.split(";")[0].trim());
+            assertKeys(board, board.getFen());
+
+            for (int game = 0; game < GAMES; game++) {
+                int played = 0;
+                for (int ply = 0; ply < PLIES; ply++) {
+                    board.getLegalMoves(moves);
+                    if (moves.size() == 0) break;
+
+                    int move = moves.get(random.nextInt(moves.size()));
+                    String before = board.getFen();
+                    board.makeMove(move);
+                    assertKeys(board, before + " " + PackedMove.unpack(move));
+                    played++;
+                }
+                while (played-- > 0) {
+                    board.undoMove();
+                    assertKeys(board, "undo " + board.getFen());
+                }
+            }
+        }
+    }
+
+    // Same pieces, different squares: same material key, and the pawn key only follows the pawns
+    @Test
+    public void testKeyScopes() {
+        Board a = new Board();
+        a.loadFromFen("4k3/pp3n2/8/8/8/8/PP2N3/4K3 w - - 0 1");
+        Board b = new Board();
+        b.loadFromFen("4k1n1/pp6/8/8/8/8/PP6/1N2K3 b - - 0 1");
+        Board c = new Board();
+        c.loadFromFen("4k3/p4n2/1p6/8/8/8/PP2N3/4K3 w - - 0 1");
+
+        assertEquals(a.materialKey, b.materialKey);
+        assertEquals(a.pawnKey, b.pawnKey);
+        assertEquals(a.materialKey, c.materialKey);
+        assertNotEquals(a.pawnKey, c.pawnKey);
+    }
+}
@@ -0,0 +1,48 @@
+package aspira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.hash.Cuckoo;
+import fr.flwrian.aspira.hash.Zobrist;
+import fr.flwrian.aspira.move.MoveGenerator;
+
+public class CuckooTest {
+
+    @Test
+    public void testTables() {
+        // knight, bishop, rook, queen and king moves of both colors
+        assertEquals(3668, Cuckoo.size());
+
+        long key = Zobrist.PIECE_KEYS[1][Board.KNIGHT][62] ^ Zobrist.PIECE_KEYS[1][Board.KNIGHT][45] ^ Zobrist.SIDE_TO_MOVE_KEY;
+        assertEquals((45 << 6) | 62, Cuckoo.find(key));
+        assertEquals(0, Cuckoo.find(key ^ Zobrist.SIDE_TO_MOVE_KEY));
+    }
+
+    @Test
+    public void testUpcomingRepetition() {
+        MoveGenerator.initSlidingAttacks();
+        String start = DrawRulesTest.START;
+
+        // black can play Ng8 and repeat the start position
+        Board board = DrawRulesTest.play(start, "g1f3", "g8f6", "f3g1");
+        assertTrue(board.hasUpcomingRepetition(10));
+        // not when that position is at or before the root
+        assertFalse(board.hasUpcomingRepetition(3));
+
+        // sliders: the rook can go back up the file
+        board = DrawRulesTest.play("r3k3/8/8/8/8/8/8/4K3 w - - 0 1", "e1d1", "a8a3", "d1e1");
+        assertTrue(board.hasUpcomingRepetition(10));
+        // two pieces moved for good: no single move goes back
+        board = DrawRulesTest.play("r3k3/8/8/8/8/8/8/R3K3 w - - 0 1", "a1a5", "a8a6", "e1d1");
+        assertFalse(board.hasUpcomingRepetition(10));
+
+        // a pawn move in between cannot be undone
+        board = DrawRulesTest.play(start, "g1f3", "e7e6", "f3g1");
+        assertFalse(board.hasUpcomingRepetition(10));
+    }
+}
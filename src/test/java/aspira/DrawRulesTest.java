@@ -0,0 +1,94 @@
+package aspira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+import fr.flwrian.aspira.move.PackedMoveList;
+
+public class DrawRulesTest {
+
+    static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    static Board play(String fen, String... moves) {
+        Board board = new Board();
+        board.loadFromFen(fen);
+        for (String move : moves) {
+            board.makeMove(move);
+        }
+        return board;
+    }
+
+    @Test
+    public void testHalfmoveClock() {
+        MoveGenerator.initSlidingAttacks();
+
+        Board board = play("4k3/8/8/3p4/8/8/3R4/4K3 w - - 12 40");
+        assertEquals(12, board.halfmoveClock);
+        assertTrue(board.getFen().endsWith(" 12 1"));
+
+        board.makeMove("e1f1");
+        assertEquals(13, board.halfmoveClock);
+        board.makeMove("d5d4");   // pawn move
+        assertEquals(0, board.halfmoveClock);
+        board.makeMove("d2d3");
+        assertEquals(1, board.halfmoveClock);
+        board.makeMove("e8e7");
+        board.makeMove("d3d4");   // capture
+        assertEquals(0, board.halfmoveClock);
+
+        board.undoMove();
+        assertEquals(2, board.halfmoveClock);
+        board.undoMove();
+        board.undoMove();
+        board.undoMove();
+        assertEquals(13, board.halfmoveClock);
+        board.undoMove();
+        assertEquals(12, board.halfmoveClock);
+    }
+
+    @Test
+    public void testRepetition() {
+        MoveGenerator.initSlidingAttacks();
+
+        Board board = play(START, "g1f3", "g8f6", "f3g1");
+        assertFalse(board.isThreefoldRepetition());
+        board.makeMove("f6g8");
+        assertTrue(board.isThreefoldRepetition());
+
+        // after a pawn move, only the positions since it are compared
+        board = play(START, "g1f3", "g8f6", "f3g1", "e7e6", "g1f3", "f8e7", "f3g1");
+        assertFalse(board.isThreefoldRepetition());
+        board.makeMove("e7f8");
+        assertTrue(board.isThreefoldRepetition());
+
+        // back to the start position through null moves: not a repetition of the game
+        board = play(START, "g1f3");
+        board.makeNullMove();
+        board.makeMove("f3g1");
+        board.makeNullMove();
+        assertEquals(board.history.stack[0].zobristKey, board.zobristKey);
+        assertFalse(board.isThreefoldRepetition());
+    }
+
+    @Test
+    public void testFiftyMoveRule() {
+        MoveGenerator.initSlidingAttacks();
+        PackedMoveList moves = new PackedMoveList(256);
+
+        Board board = play("4k3/8/8/8/8/8/3R4/4K3 w - - 99 80");
+        assertFalse(board.isFiftyMoveRule());
+        board.makeMove("d2d3");
+        assertTrue(board.isFiftyMoveRule());
+        assertFalse(board.isCheckMate(moves));
+
+        // mate on the 100th ply is still a mate
+        board = play("6k1/5ppp/8/8/8/8/8/3RK3 w - - 99 80", "d1d8");
+        assertTrue(board.isFiftyMoveRule());
+        assertTrue(board.isCheckMate(moves));
+    }
+}
@@ -0,0 +1,91 @@
+package aspira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+import fr.flwrian.aspira.move.PackedMoveList;
+
+public class FenTest {
+
+    static final int PLIES = 30;
+
+    static void assertSamePosition(Board expected, Board actual) {
+        if (expected.zobristKey != actual.zobristKey || expected.pawnKey != actual.pawnKey
+                || expected.materialKey != actual.materialKey || expected.evaluate() != actual.evaluate()
+                || expected.halfmoveClock != actual.halfmoveClock || !expected.getFen().equals(actual.getFen())) {
+            fail(expected.getFen() + " loaded as " + actual.getFen());
+        }
+    }
+
+    // writeFen into a shared buffer then loadFromFen on the byte slice gives back the same position,
+    // along random games from the perft suite. Each position is first reloaded from its FEN: a played one
+    // can keep castling rights whose rook was taken at home, and its incremental evaluation drifts
+    @Test
+    public void testRoundTrip() throws IOException {
+        MoveGenerator.initSlidingAttacks();
+        Random random = new Random(22);
+        PackedMoveList moves = new PackedMoveList(256);
+        byte[] buffer = new byte[3 * Board.MAX_FEN_LENGTH];
+        Board expected = new Board();
+        Board loaded = new Board();
+
+        for (String line : Files.readAllLines(Path.of("perft-suite/standard.epd"))) {
+            Board board = new Board();
+            board.loadFromFen(line.split(";")[0].trim());
+
+            for (int ply = 0; ply < PLIES; ply++) {
+                int offset = ply % 3 * Board.MAX_FEN_LENGTH;
+                expected.loadFromFen(board.getFen());
+                int end = expected.writeFen(buffer, offset);
+                loaded.loadFromFen(buffer, offset, end);
+                assertSamePosition(expected, loaded);
+
+                board.getLegalMoves(moves);
+                if (moves.size() == 0) break;
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+
+    // a slice of a longer text: only the FEN fields are read, whatever surrounds them
+    @Test
+    public void testSlices() {
+        MoveGenerator.initSlidingAttacks();
+        String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 7 1";
+        Board expected = new Board();
+        expected.loadFromFen(fen);
+
+        String epd = "garbage\n" + fen + " ;D1 48 ;D2 2039\nmore";
+        int start = epd.indexOf('\n') + 1;
+        int end = epd.indexOf(" ;");
+
+        Board board = new Board();
+        board.loadFromFen(epd, start, end);
+        assertSamePosition(expected, board);
+
+        board = new Board();
+        board.loadFromFen(epd.getBytes(StandardCharsets.US_ASCII), start, end);
+        assertSamePosition(expected, board);
+
+        // EPD without the move counters, or followed by operations
+        board.loadFromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq -");
+        assertEquals(0, board.halfmoveClock);
+        board.loadFromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - bm e5d7;");
+        assertEquals(0, board.halfmoveClock);
+        assertEquals(expected.zobristKey, board.zobristKey);
+
+        // en passant square and a multi-digit clock
+        board.loadFromFen("rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq e3 123 3");
+        assertEquals("rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq e3 123 1", board.getFen());
+    }
+}
@@ -0,0 +1,64 @@
+package aspira;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+import fr.flwrian.aspira.move.PackedMove;
+import fr.flwrian.aspira.move.PackedMoveList;
+
+public class GivesCheckTest {
+
+    static final int GAMES = 4;
+    static final int PLIES = 40;
+
+    // givesCheck before the move must agree with the check test after it, for every legal move
+    // of random games from the perft suite (its positions are full of promotions, en passant and castling)
+    @Test
+    public void testMatchesMakeMove() throws IOException {
+        MoveGenerator.initSlidingAttacks();
+        Random random = new Random(17);
+        PackedMoveList moves = new PackedMoveList(256);
+        int checks = 0;
+
+        for (String line : Files.readAllLines(Path.of("perft-suite/standard.epd"))) {
+            Board board = new Board();
+            board.loadFromFen(line.split(";")[0].trim());
+
+            for (int game = 0; game < GAMES; game++) {
+                int played = 0;
+                for (int ply = 0; ply < PLIES; ply++) {
+                    board.getLegalMoves(moves);
+                    if (moves.size() == 0) break;
+
+                    for (int i = 0; i < moves.size(); i++) {
+                        int move = moves.get(i);
+                        boolean expected = board.givesCheck(move);
+                        board.makeMove(move);
+                        boolean actual = board.isInCheck();
+                        board.undoMove();
+
+                        if (expected != actual) {
+                            fail(board.getFen() + " " + PackedMove.unpack(move) + " givesCheck=" + expected);
+                        }
+                        if (actual) checks++;
+                    }
+
+                    board.makeMove(moves.get(random.nextInt(moves.size())));
+                    played++;
+                }
+                while (played-- > 0) board.undoMove();
+            }
+        }
+
+        assertTrue(checks > 0);
+    }
+}
@@ -0,0 +1,100 @@
+package aspira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+import fr.flwrian.aspira.move.PackedMove;
+import fr.flwrian.aspira.move.PackedMoveList;
+
+public class LegalityTest {
+
+    static final int PLIES = 10;
+
+    static Set<Integer> legalMoves(Board board) {
+        PackedMoveList moves = board.getLegalMoves(new PackedMoveList(256));
+        Set<Integer> set = new HashSet<>();
+        for (int i = 0; i < moves.size(); i++) {
+            set.add(moves.get(i));
+        }
+        return set;
+    }
+
+    static boolean accepted(Board board, int move) {
+        return board.isPseudoLegal(move) && board.isLegal(move);
+    }
+
+    // Random games from the perft suite: every 16 bit move (what the TT stores) decoded in the position
+    // must pass isPseudoLegal + isLegal exactly when the generator returns it.
+    @Test
+    public void testMatchesGenerator() throws IOException {
+        MoveGenerator.initSlidingAttacks();
+        Random random = new Random(16);
+
+        for (String line : Files.readAllLines(Path.of("perft-suite/standard.epd"))) {
+            Board board = new Board();
+            board.loadFromFen(line.split(";")[0].trim());
+
+            int played = 0;
+            for (int ply = 0; ply < PLIES; ply++) {
+                Set<Integer> legal = legalMoves(board);
+
+                int accepted = 0;
+                for (int compact = 0; compact < 0x10000; compact++) {
+                    int move = MoveGenerator.decodeCompactMove(board, compact);
+                    boolean ok = accepted(board, move);
+                    if (ok != legal.contains(move)) {
+                        fail(board.getFen() + " " + PackedMove.unpack(move) + " accepted=" + ok);
+                    }
+                    if (ok) accepted++;
+                }
+                assertEquals(board.getFen(), legal.size(), accepted);
+
+                if (legal.isEmpty()) break;
+                Integer[] moves = legal.toArray(new Integer[0]);
+                board.makeMove(moves[random.nextInt(moves.length)]);
+                played++;
+            }
+            while (played-- > 0) board.undoMove();
+        }
+    }
+
+    // Moves from other positions, as a hash collision or a stale killer would give, and garbage ints
+    @Test
+    public void testRejectsForeignMoves() throws IOException {
+        MoveGenerator.initSlidingAttacks();
+        Random random = new Random(61);
+
+        Board previous = null;
+        for (String line : Files.readAllLines(Path.of("perft-suite/standard.epd"))) {
+            Board board = new Board();
+            board.loadFromFen(line.split(";")[0].trim());
+            Set<Integer> legal = legalMoves(board);
+
+            if (previous != null) {
+                for (int move : legalMoves(previous)) {
+                    assertEquals(board.getFen() + " " + PackedMove.unpack(move), legal.contains(move), accepted(board, move));
+                }
+            }
+
+            for (int i = 0; i < 10_000; i++) {
+                int move = random.nextInt() & 0x0FFFFFFF;
+                if (accepted(board, move) && !legal.contains(move)) {
+                    fail(board.getFen() + " " + PackedMove.unpack(move));
+                }
+            }
+
+            previous = board;
+        }
+    }
+}
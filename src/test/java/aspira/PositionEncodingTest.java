@@ -0,0 +1,96 @@
+package aspira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.flwrian.aspira.board.Board;
+import fr.flwrian.aspira.move.MoveGenerator;
+import fr.flwrian.aspira.move.PackedMoveList;
+
+public class PositionEncodingTest {
+
+    static final int PLIES = 60;
+
+    static String state(Board board) {
+        return board.getFen() + " castling=" + board.castlingRights + " ply=" + board.plyCount
+                + " keys=" + board.zobristKey + "/" + board.pawnKey + "/" + board.materialKey
+                + " boards=" + board.pawns + "/" + board.knights + "/" + board.bishops + "/" + board.rooks
+                + "/" + board.queens + "/" + board.kings + "/" + board.whitePieces + "/" + board.blackPieces;
+    }
+
+    // encode then decode gives back the position played so far, keys included,
+    // along random games from the perft suite (castling, en passant, promotions, long clocks)
+    @Test
+    public void testRoundTrip() throws IOException {
+        MoveGenerator.initSlidingAttacks();
+        Random random = new Random(23);
+        PackedMoveList moves = new PackedMoveList(256);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Board.ENCODED_SIZE);
+        Board decoded = new Board();
+        Board fromFen = new Board();
+
+        for (String line : Files.readAllLines(Path.of("perft-suite/standard.epd"))) {
+            Board board = new Board();
+            board.loadFromFen(line.split(";")[0].trim());
+
+            for (int ply = 0; ply < PLIES; ply++) {
+                int offset = ply % 2 * Board.ENCODED_SIZE;
+                board.encode(buffer.position(offset));
+                assertEquals(offset + Board.ENCODED_SIZE, buffer.position());
+                decoded.decode(buffer.position(offset));
+                assertEquals(offset + Board.ENCODED_SIZE, buffer.position());
+
+                // decode sets up the evaluation like a fresh load (the played board's may drift)
+                fromFen.loadFromFen(board.getFen());
+                if (decoded.currentEvalMG != fromFen.currentEvalMG || decoded.currentEvalEG != fromFen.currentEvalEG
+                        || decoded.phase != fromFen.phase) {
+                    fail(board.getFen() + " evaluation " + decoded.currentEvalMG + "/" + decoded.currentEvalEG + "/" + decoded.phase
+                            + " decoded, " + fromFen.currentEvalMG + "/" + fromFen.currentEvalEG + "/" + fromFen.phase + " from FEN");
+                }
+
+                if (board.zobristKey != decoded.zobristKey || !state(board).equals(state(decoded))) {
+                    fail(state(board) + " decoded as " + state(decoded));
+                }
+
+                board.getLegalMoves(moves);
+                if (moves.size() == 0) break;
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+
+    @Test
+    public void testDecodedBoardPlays() {
+        MoveGenerator.initSlidingAttacks();
+        Board board = new Board();
+        board.loadFromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        board.makeMove("a2a4");   // en passant on a3 for black
+
+        ByteBuffer buffer = ByteBuffer.allocate(Board.ENCODED_SIZE);
+        board.encode(buffer);
+        Board decoded = new Board();
+        decoded.decode(buffer.flip());
+
+        PackedMoveList expected = board.getLegalMoves(new PackedMoveList(256));
+        PackedMoveList actual = decoded.getLegalMoves(new PackedMoveList(256));
+        assertEquals(expected.size(), actual.size());
+        decoded.makeMove("b4a3");
+        decoded.undoMove();
+        assertEquals(board.zobristKey, decoded.zobristKey);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyPieces() {
+        Board board = new Board();
+        board.loadFromFen("rnbqkbnr/pppppppp/8/8/8/7N/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        board.encode(ByteBuffer.allocate(Board.ENCODED_SIZE));
+    }
+}
@@ -0,0 +1,32 @@
+package aspira;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.flwrian.aspira.move.MoveGenerator;
+
+public class SliderAttacksTest {
+
+    @Test
+    public void testTable() {
+        // loaded from the resource written by the build, computed without it: same attacks either way
+        MoveGenerator.initSlidingAttacks();
+
+        Random random = new Random(25);
+        for (int i = 0; i < 100000; i++) {
+            int square = random.nextInt(64);
+            long occupancy = random.nextLong() & random.nextLong();
+            if (MoveGenerator.getRookAttacks(square, occupancy) != MoveGenerator.generateRookAttacks(square, occupancy)) {
+                assertEquals("rook " + square + " " + Long.toHexString(occupancy),
+                        MoveGenerator.generateRookAttacks(square, occupancy), MoveGenerator.getRookAttacks(square, occupancy));
+            }
+            if (MoveGenerator.getBishopAttacks(square, occupancy) != MoveGenerator.generateBishopAttacks(square, occupancy)) {
+                assertEquals("bishop " + square + " " + Long.toHexString(occupancy),
+                        MoveGenerator.generateBishopAttacks(square, occupancy), MoveGenerator.getBishopAttacks(square, occupancy));
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package aspira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.flwrian.aspira.hash.TranspositionTable;
+import fr.flwrian.aspira.hash.Zobrist;
+
+public class TranspositionTableTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    static final int THREADS = 8;
+    static final int OPS_PER_THREAD = 2_000_000;
+
+    // Few buckets, many keys: every put races with puts/gets on the same entries
+    static final int BUCKETS_USED = 16;
+    static final int KEYS = 4096;
+
+    // Every field of a stored entry is derived from (key, version) so a reader can tell
+    // if the fields it got back belong to the same write.
+    static int moveFor(long key, int version) {
+        return (int) ((key ^ (key >>> 29) ^ version * 0x9E3779B1L) & 0xFFFF);
+    }
+
+    static int depthFor(int version) {
+        return version % 64;
+    }
+
+    static int flagFor(int version) {
+        return version % 3;
+    }
+
+    static long[] makeKeys() {
+        Random random = new Random(20255);
+        long[] keys = new long[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            // distinct high bits, low bits pick one of the few shared buckets
+            keys[i] = ((long) i << 48) | (random.nextLong() & 0x0000FFFFFFFF0000L) | (i % BUCKETS_USED);
+        }
+        return keys;
+    }
+
+    @Test
+    public void storeAndProbe() {
+        TranspositionTable tt = new TranspositionTable(1);
+        long key = 0x123456789ABCDEF0L;
+
+        assertNull(tt.get(key));
+
+        tt.put(key, 0xABCD, -31000, 12, TranspositionTable.Entry.LOWERBOUND);
+        TranspositionTable.Entry e = tt.get(key);
+        assertNotNull(e);
+        assertEquals(key, e.key);
+        assertEquals(0xABCD, e.bestMove);
+        assertEquals(-31000, e.value);
+        assertEquals(12, e.depth);
+        assertEquals(TranspositionTable.Entry.LOWERBOUND, e.flag);
+
+        long data = tt.probe(key);
+        assertTrue(TranspositionTable.isHit(data));
+        assertEquals(0xABCD, TranspositionTable.move(data));
+        assertEquals(-31000, TranspositionTable.value(data));
+        assertEquals(12, TranspositionTable.depth(data));
+        assertEquals(TranspositionTable.Entry.LOWERBOUND, TranspositionTable.flag(data));
+
+        assertNull(tt.get(key ^ (1L << 60)));
+        assertFalse(TranspositionTable.isHit(tt.probe(key ^ (1L << 60))));
+
+        tt.flush();
+        assertNull(tt.get(key));
+    }
+
+    @Test
+    public void staleDeepEntriesAreReplacedFirst() {
+        TranspositionTable tt = new TranspositionTable(1);
+
+        // all keys below land in the same bucket (same low bits)
+        long old = (1L << 48) | 5;
+        tt.put(old, 0, 0, 30, TranspositionTable.Entry.EXACT);
+
+        // a few searches later the deep entry is stale
+        for (int i = 0; i < 4; i++) {
+            tt.newSearch();
+        }
+
+        // fill the rest of the bucket with shallow entries from this search
+        for (int i = 2; i <= 8; i++) {
+            tt.put(((long) i << 48) | 5, 0, 0, 2, TranspositionTable.Entry.EXACT);
+        }
+
+        long fresh = (100L << 48) | 5;
+        tt.put(fresh, 0, 0, 3, TranspositionTable.Entry.EXACT);
+
+        assertNull(tt.get(old));
+        assertNotNull(tt.get(fresh));
+        assertEquals(tt.generation(), TranspositionTable.generation(tt.probe(fresh)));
+        for (int i = 2; i <= 8; i++) {
+            assertNotNull(tt.get(((long) i << 48) | 5));
+        }
+    }
+
+    @Test
+    public void lazyClearHidesOldEntries() {
+        TranspositionTable tt = new TranspositionTable(1);
+        long key = 0x123456789ABCDEF0L;
+
+        tt.put(key, 0xABCD, 100, 20, TranspositionTable.Entry.EXACT);
+        tt.clearLazily();
+        assertNull(tt.get(key));
+
+        // the dead entry's slot is reused like an empty one
+        tt.newSearch();
+        tt.put(key, 0x1234, -50, 3, TranspositionTable.Entry.UPPERBOUND);
+        TranspositionTable.Entry e = tt.get(key);
+        assertNotNull(e);
+        assertEquals(0x1234, e.bestMove);
+        assertEquals(3, e.depth);
+
+        // and survives the following searches
+        tt.newSearch();
+        assertNotNull(tt.get(key));
+    }
+
+    @Test
+    public void lazyClearKeepsOldEntriesHiddenAfterManySearches() {
+        TranspositionTable tt = new TranspositionTable(1);
+        long base = 0x123456789ABCDEF0L;
+
+        // one entry per generation, in its own bucket
+        for (int g = 0; g < 64; g++) {
+            tt.newSearch();
+            tt.put(base + g, 0xABCD, g, 20, TranspositionTable.Entry.EXACT);
+        }
+        tt.clearLazily();
+
+        // the 6-bit generation wraps around, the cleared entries must not come back with it
+        for (int search = 1; search <= 130; search++) {
+            tt.newSearch();
+            for (int g = 0; g < 64; g++) {
+                assertNull("entry of generation " + g + " after " + search + " searches", tt.get(base + g));
+            }
+        }
+    }
+
+    @Test
+    public void saveAndLoadRoundTrip() throws IOException {
+        File file = temporaryFolder.newFile("tt.bin");
+        long[] keys = makeKeys();
+
+        TranspositionTable tt = new TranspositionTable(8);
+        tt.newSearch();
+        for (int i = 0; i < KEYS; i++) {
+            tt.put(keys[i] ^ ((long) i << 20), moveFor(keys[i], i), i, depthFor(i), flagFor(i));
+        }
+        tt.save(file.toPath());
+
+        TranspositionTable loaded = TranspositionTable.load(file.toPath());
+        assertEquals(tt.capacity(), loaded.capacity());
+        assertEquals(tt.generation(), loaded.generation());
+        for (int i = 0; i < KEYS; i++) {
+            long key = keys[i] ^ ((long) i << 20);
+            assertEquals(tt.probe(key), loaded.probe(key));
+        }
+
+        // writes go to memory only, the file keeps the saved table
+        loaded.flush();
+        assertNull(loaded.get(keys[0]));
+        assertEquals(tt.probe(keys[0]), TranspositionTable.load(file.toPath()).probe(keys[0]));
+    }
+
+    @Test
+    public void saveOverTheFileItWasLoadedFrom() throws IOException {
+        File file = temporaryFolder.newFile("tt.bin");
+        long[] keys = makeKeys();
+
+        TranspositionTable tt = new TranspositionTable(8);
+        tt.newSearch();
+        for (int i = 0; i < KEYS; i++) {
+            tt.put(keys[i] ^ ((long) i << 20), moveFor(keys[i], i), i, depthFor(i), flagFor(i));
+        }
+        tt.save(file.toPath());
+
+        // the loaded table reads its entries from the file it is saved to
+        TranspositionTable loaded = TranspositionTable.load(file.toPath());
+        loaded.save(file.toPath());
+
+        TranspositionTable reloaded = TranspositionTable.load(file.toPath());
+        for (int i = 0; i < KEYS; i++) {
+            long key = keys[i] ^ ((long) i << 20);
+            assertEquals(tt.probe(key), loaded.probe(key));
+            assertEquals(tt.probe(key), reloaded.probe(key));
+        }
+        assertEquals(1, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void loadRejectsOtherZobristKeys() throws IOException {
+        File file = temporaryFolder.newFile("tt.bin");
+        new TranspositionTable(1).save(file.toPath());
+
+        // header offset 16 = Zobrist fingerprint
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(16);
+            raf.writeLong(~Zobrist.fingerprint());
+        }
+
+        TranspositionTable.load(file.toPath());
+    }
+
+    @Test
+    public void concurrentPutGetNeverReturnsTornEntries() throws InterruptedException {
+        TranspositionTable tt = new TranspositionTable(1);
+        long[] keys = makeKeys();
+        AtomicLong hits = new AtomicLong();
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                long localHits = 0;
+                for (int i = 0; i < OPS_PER_THREAD && failure.get() == null; i++) {
+                    long key = keys[random.nextInt(KEYS)];
+                    if (random.nextBoolean()) {
+                        int version = random.nextInt(30000);
+                        tt.put(key, moveFor(key, version), version, depthFor(version), flagFor(version));
+                    } else {
+                        TranspositionTable.Entry e = tt.get(key);
+                        if (e == null) {
+                            continue;
+                        }
+                        localHits++;
+                        int version = e.value;
+                        if (e.key != key || version < 0 || e.bestMove != moveFor(key, version)
+                                || e.depth != depthFor(version) || e.flag != flagFor(version)) {
+                            failure.compareAndSet(null, "inconsistent entry for key " + Long.toHexString(key)
+                                    + ": move=" + e.bestMove + " value=" + e.value + " depth=" + e.depth + " flag=" + e.flag);
+                        }
+                    }
+                }
+                hits.addAndGet(localHits);
+            });
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get(), failure.get());
+        assertTrue("stress test never hit the table", hits.get() > 0);
+    }
+}
@@ -5,6 +5,8 @@ MYSELF="$(readlink -f "$0")"
 JAVA_BIN=java
 [ -n "$JAVA_HOME" ] && JAVA_BIN="$JAVA_HOME/bin/java"
 
+# The hash table lives off-heap, let it grow past the default cap (max heap size)
 exec "$JAVA_BIN" \
+  -XX:MaxDirectMemorySize=256g \
   -jar "$MYSELF" "$@"
   # -XX:+PrintFlagsFinal \